@@ -24,6 +24,16 @@ public class TestApp {
                         System.out.println(backupService.backup(args[2], repDegree));
                     }
                     break;
+                case "BACKUP_EC":
+                    if(args.length != 5){
+                        System.out.println("No file was provided. Usage: <PeerAP> BACKUP_EC <fileName> <dataFragments> <parityFragments>");
+                    }else {
+                        int dataFragments = Integer.parseInt(args[3]);
+                        int parityFragments = Integer.parseInt(args[4]);
+                        System.out.println("Backing up file " + args[2] + " as " + dataFragments + " data and " + parityFragments + " parity fragments...\n");
+                        System.out.println(backupService.backupErasureCoded(args[2], dataFragments, parityFragments));
+                    }
+                    break;
                 case "RESTORE":
                     if(args.length != 3){
                         System.out.println("No file was provided. Usage: <PeerAP> RESTORE <fileName>");
@@ -43,6 +53,13 @@ public class TestApp {
                 case "STATE":
                     System.out.println(backupService.state());
                     break;
+                case "METRICS":
+                    System.out.println(backupService.metrics());
+                    break;
+                case "LEAVE":
+                    System.out.println("Leaving the ring...\n");
+                    System.out.println(backupService.leave());
+                    break;
                 case "RECLAIM":
                     if(args.length != 3){
                         System.out.println("No number of bytes were provided. Usage: <PeerAP> RECLAIM <newSizeBytes>");
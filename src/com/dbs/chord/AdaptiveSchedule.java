@@ -0,0 +1,121 @@
+package com.dbs.chord;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Runs a Chord maintenance task at an interval that doubles every time a run leaves the ring as it was, up to a
+ * maximum, and drops back to the minimum as soon as the ring changes. Every delay is jittered so that nodes started
+ * together drift apart instead of probing each other in lockstep.
+ */
+public class AdaptiveSchedule {
+
+    // Each delay is the interval plus or minus up to this fraction of it
+    private static final double JITTER = 0.2;
+
+    private final ScheduledExecutorService scheduler;
+    private final Runnable task;
+    // Changes whenever the successor, predecessor or a finger changes
+    private final LongSupplier ringVersion;
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private volatile long intervalMs;
+
+    private final LongAdder runs = new LongAdder();
+    private ScheduledFuture<?> next;
+    private boolean stopped = false;
+    private boolean running = false;
+
+    public AdaptiveSchedule(ScheduledExecutorService scheduler, Runnable task, LongSupplier ringVersion, long minIntervalMs, long maxIntervalMs) {
+        this.scheduler = scheduler;
+        this.task = task;
+        this.ringVersion = ringVersion;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+        this.intervalMs = minIntervalMs;
+    }
+
+    public synchronized void start() {
+        this.next = this.scheduler.schedule(this::run, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called when the ring changed outside of this task, so that it runs again soon instead of after a long back off
+     */
+    public synchronized void reset() {
+        if (this.stopped || this.intervalMs == this.minIntervalMs) return;
+
+        this.intervalMs = this.minIntervalMs;
+
+        // if the task is running instead, it sees the ring change and reschedules itself at the minimum
+        if (this.next != null && this.next.cancel(false)) {
+            this.scheduleNext();
+        }
+    }
+
+    /**
+     * Cancels the next run. If the task is running, waits for it to finish, so nothing it sends arrives after the call
+     */
+    public synchronized void stop() throws InterruptedException {
+        this.stopped = true;
+
+        if (this.next != null) {
+            this.next.cancel(false);
+        }
+
+        while (this.running) {
+            this.wait();
+        }
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    private void run() {
+        synchronized (this) {
+            if (this.stopped) return;
+            this.running = true;
+        }
+
+        long version = this.ringVersion.getAsLong();
+
+        try {
+            this.task.run();
+        } finally {
+            this.runs.increment();
+
+            synchronized (this) {
+                this.running = false;
+
+                if (this.stopped) {
+                    this.notifyAll();
+                    return;
+                }
+
+                if (this.ringVersion.getAsLong() == version) {
+                    this.intervalMs = Math.min(this.intervalMs * 2, this.maxIntervalMs);
+                } else {
+                    this.intervalMs = this.minIntervalMs;
+                }
+                this.scheduleNext();
+            }
+        }
+    }
+
+    private void scheduleNext() {
+        double jitter = 1 + ThreadLocalRandom.current().nextDouble(-JITTER, JITTER);
+        long delay = Math.max(1, Math.round(this.intervalMs * jitter));
+
+        this.next = this.scheduler.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+    }
+}
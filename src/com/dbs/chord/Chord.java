@@ -23,4 +23,6 @@ public interface Chord {
     void fixFingers() throws InterruptedException, ExecutionException, NoSuchAlgorithmException, IOException;
 
     void checkPredecessor() throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException;
+
+    void leave() throws IOException, NoSuchAlgorithmException, InterruptedException;
 }
@@ -0,0 +1,223 @@
+package com.dbs.chord;
+
+import com.dbs.network.NullSimpleNodeInfo;
+import com.dbs.network.messages.LookupBatchMessage;
+import com.dbs.network.messages.LookupBatchReplyMessage;
+import com.dbs.utils.ConsoleLogger;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+
+import static com.dbs.chord.Utils.between;
+
+/**
+ * Resolves every finger of the table in a few rounds instead of one lookup per finger.
+ * Finger starts that fall between the same two known nodes most likely have the same successor, so only the first of
+ * them is looked up and the range in the answer settles the others. The keys looked up in a round are sent in one
+ * LOOKUP_BATCH per node to ask, and each node answers every key with its successor or the next node to ask, so the
+ * table converges in about as many round trips as a single lookup.
+ */
+class FingerRefresh {
+
+    // Gives up on the fingers still open after this many rounds; they keep their previous value
+    private static final int MAX_ROUNDS = 16;
+
+    private final Node node;
+    private final long self;
+
+    private final long[] starts = new long[Chord.NUM_BITS_KEYS + 1];
+    private final NodeInfo[] fingers = new NodeInfo[Chord.NUM_BITS_KEYS + 1];
+    private final boolean[] abandoned = new boolean[Chord.NUM_BITS_KEYS + 1];
+
+    // Nodes this node knows about, by key
+    private final Map<Long, NodeInfo> known = new HashMap<>();
+    // Node to ask next for a key, once a node has pointed to it
+    private final Map<Long, NodeInfo> next = new HashMap<>();
+    // Keys of nodes that did not answer
+    private final Set<Long> failed = new HashSet<>();
+
+    private int rounds = 0;
+    private int lookups = 0;
+
+    FingerRefresh(Node node, List<NodeInfo> knownNodes) {
+        this.node = node;
+        this.self = node.getNodeInfo().key;
+
+        for (NodeInfo known : knownNodes) {
+            this.learn(known);
+        }
+
+        for (int i = 1; i <= Chord.NUM_BITS_KEYS; i++) {
+            // n + 2^(i-1), wrapping around the 64 bit key space on overflow
+            this.starts[i] = this.self + (1L << (i - 1));
+            this.fingers[i] = node.localSuccessor(this.starts[i]);
+        }
+    }
+
+    /**
+     * @return the new finger table, indexed like Node's. Fingers that could not be resolved are null
+     */
+    NodeInfo[] run() throws InterruptedException {
+        while (this.rounds < MAX_ROUNDS) {
+            Map<NodeInfo, List<Long>> batches = this.nextBatches();
+            if (batches.isEmpty()) break;
+
+            this.rounds++;
+
+            Map<NodeInfo, CompletableFuture<LookupBatchReplyMessage>> replies = new LinkedHashMap<>();
+            batches.forEach((target, keys) -> replies.put(target, this.send(target, keys)));
+
+            for (Map.Entry<NodeInfo, CompletableFuture<LookupBatchReplyMessage>> reply : replies.entrySet()) {
+                NodeInfo target = reply.getKey();
+                try {
+                    this.apply(target, reply.getValue().get());
+                } catch (ExecutionException e) {
+                    ConsoleLogger.log(Level.FINE, "Finger lookup batch to " + target.id + " failed: " + e.getMessage());
+                    this.known.remove(target.key);
+                    this.failed.add(target.key);
+                    for (long key : batches.get(target)) {
+                        this.next.remove(key);
+                    }
+                }
+            }
+        }
+
+        ConsoleLogger.log(Level.FINE, "Refreshed finger table with " + this.lookups + " lookups in " + this.rounds + " rounds");
+
+        return this.fingers;
+    }
+
+    int getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Picks the first open start between each pair of consecutive known nodes, grouped by the node to ask about it
+     */
+    private Map<NodeInfo, List<Long>> nextBatches() {
+        Map<Long, Long> representatives = new LinkedHashMap<>();
+
+        for (int i = 1; i <= Chord.NUM_BITS_KEYS; i++) {
+            if (this.fingers[i] != null || this.abandoned[i]) continue;
+
+            representatives.putIfAbsent(this.firstKnownFrom(this.starts[i]), this.starts[i]);
+        }
+
+        Map<NodeInfo, List<Long>> batches = new LinkedHashMap<>();
+        for (long key : representatives.values()) {
+            NodeInfo target = this.next.containsKey(key) ? this.next.get(key) : this.closestKnownBefore(key);
+            if (this.failed.contains(target.key)) {
+                this.abandon(key);
+                continue;
+            }
+
+            batches.computeIfAbsent(target, t -> new ArrayList<>()).add(key);
+            this.lookups++;
+        }
+
+        return batches;
+    }
+
+    private CompletableFuture<LookupBatchReplyMessage> send(NodeInfo target, List<Long> keys) {
+        List<BigInteger> bigKeys = new ArrayList<>(keys.size());
+        for (long key : keys) {
+            bigKeys.add(Utils.toBigInteger(key));
+        }
+
+        try {
+            LookupBatchMessage msg = new LookupBatchMessage(new SimpleNodeInfo(this.node.getNodeInfo()), bigKeys);
+            return this.node.getCommunicator().request(target, msg).thenApply(response -> (LookupBatchReplyMessage) response);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void apply(NodeInfo target, LookupBatchReplyMessage reply) {
+        for (LookupAnswer answer : reply.getAnswers()) {
+            long key = answer.getKey().longValue();
+
+            try {
+                if (!(answer.getSuccessor() instanceof NullSimpleNodeInfo)) {
+                    KeyRange range = new KeyRange(answer.getRangeStart().longValue(), this.learn(new NodeInfo(answer.getSuccessor())));
+
+                    for (int i = 1; i <= Chord.NUM_BITS_KEYS; i++) {
+                        if (this.fingers[i] == null && (this.starts[i] == key || range.contains(this.starts[i]))) {
+                            this.fingers[i] = range.getNode();
+                        }
+                    }
+                    continue;
+                }
+
+                NodeInfo nextNode = new NodeInfo(answer.getNext());
+
+                // only nodes closer to the key than the one asked, so every round makes progress
+                if (between(nextNode.key, target.key, key)) {
+                    this.next.put(key, this.learn(nextNode));
+                } else {
+                    this.abandon(key);
+                }
+            } catch (IOException | NoSuchAlgorithmException e) {
+                this.abandon(key);
+            }
+        }
+    }
+
+    private NodeInfo learn(NodeInfo node) {
+        if (node.key == this.self) {
+            return node;
+        }
+
+        NodeInfo known = this.known.putIfAbsent(node.key, node);
+        return known != null ? known : node;
+    }
+
+    private void abandon(long key) {
+        for (int i = 1; i <= Chord.NUM_BITS_KEYS; i++) {
+            if (this.starts[i] == key) this.abandoned[i] = true;
+        }
+    }
+
+    /**
+     * @return key of the first known node at or after key, which ends the known interval key falls in
+     */
+    private long firstKnownFrom(long key) {
+        long best = key;
+        long bestDistance = -1; // largest unsigned value
+
+        for (long nodeKey : this.known.keySet()) {
+            long distance = nodeKey - key;
+            if (Long.compareUnsigned(distance, bestDistance) < 0) {
+                best = nodeKey;
+                bestDistance = distance;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * @return the known node closest before key, or this node's successor if none is known
+     */
+    private NodeInfo closestKnownBefore(long key) {
+        NodeInfo best = null;
+
+        for (NodeInfo node : this.known.values()) {
+            if (between(node.key, this.self, key) && (best == null || Long.compareUnsigned(key - node.key, key - best.key) < 0)) {
+                best = node;
+            }
+        }
+
+        return best != null ? best : this.node.getSuccessor();
+    }
+}
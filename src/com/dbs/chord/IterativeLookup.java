@@ -0,0 +1,141 @@
+package com.dbs.chord;
+
+import com.dbs.network.NullSimpleNodeInfo;
+import com.dbs.network.messages.LookupStepMessage;
+import com.dbs.network.messages.LookupStepReplyMessage;
+import com.dbs.utils.ConsoleLogger;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+
+import static com.dbs.chord.Utils.between;
+
+/**
+ * Finds the successor of a key by asking the nodes on the way directly, instead of having each of them forward the
+ * request. Keeps up to parallelism queries in flight, always to the unasked candidates closest before the key, so a
+ * slow or dead node only costs the time until another candidate answers. The first successor reported wins.
+ */
+class IterativeLookup {
+
+    private static class Candidate {
+        final NodeInfo node;
+        // Number of nodes asked on the path that led to this one, including itself
+        final int hops;
+
+        Candidate(NodeInfo node, int hops) {
+            this.node = node;
+            this.hops = hops;
+        }
+    }
+
+    private final Node node;
+    private final long key;
+    private final int parallelism;
+
+    private final CompletableFuture<KeyRange> result = new CompletableFuture<>();
+
+    // Candidates not asked yet, closest to the key first
+    private final PriorityQueue<Candidate> pending;
+    private final Set<Long> seen = new HashSet<>();
+    private int inFlight = 0;
+
+    IterativeLookup(Node node, long key, int parallelism) {
+        this.node = node;
+        this.key = key;
+        this.parallelism = parallelism;
+        this.pending = new PriorityQueue<>((a, b) -> Long.compareUnsigned(key - a.node.key, key - b.node.key));
+    }
+
+    /**
+     * @param first - nodes known by this node that precede the key
+     * @return future resolved with the successor of the key and the range it is responsible for
+     */
+    CompletableFuture<KeyRange> start(List<NodeInfo> first) {
+        synchronized (this) {
+            for (NodeInfo candidate : first) {
+                this.offer(candidate, 1);
+            }
+        }
+
+        this.launch();
+
+        return this.result;
+    }
+
+    private void offer(NodeInfo candidate, int hops) {
+        if (candidate.key != this.node.getNodeInfo().key && this.seen.add(candidate.key)) {
+            this.pending.add(new Candidate(candidate, hops));
+        }
+    }
+
+    private void launch() {
+        while (true) {
+            Candidate next;
+            synchronized (this) {
+                if (this.result.isDone()) return;
+
+                if (this.inFlight >= this.parallelism || this.pending.isEmpty()) {
+                    if (this.inFlight == 0) {
+                        this.result.completeExceptionally(new IOException("No node left to ask for key " + Utils.toBigInteger(this.key)));
+                    }
+                    return;
+                }
+
+                next = this.pending.poll();
+                this.inFlight++;
+            }
+
+            this.query(next);
+        }
+    }
+
+    private void query(Candidate candidate) {
+        try {
+            LookupStepMessage msg = new LookupStepMessage(new SimpleNodeInfo(this.node.getNodeInfo()), Utils.toBigInteger(this.key));
+
+            this.node.getCommunicator().request(candidate.node, msg)
+                    .whenComplete((response, e) -> this.handleReply(candidate, (LookupStepReplyMessage) response, e));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            this.handleReply(candidate, null, e);
+        }
+    }
+
+    private void handleReply(Candidate candidate, LookupStepReplyMessage reply, Throwable error) {
+        synchronized (this) {
+            this.inFlight--;
+
+            if (error != null) {
+                ConsoleLogger.log(Level.FINE, "Lookup step to " + candidate.node.id + " failed: " + error.getMessage());
+            } else {
+                try {
+                    if (!(reply.getNode() instanceof NullSimpleNodeInfo)) {
+                        if (this.result.complete(new KeyRange(reply.getRangeStart().longValue(), new NodeInfo(reply.getNode())))) {
+                            this.node.getMetrics().lookup(candidate.hops);
+                            ConsoleLogger.log(Level.FINE, "Found successor of " + Utils.toBigInteger(this.key) + " in " + candidate.hops + " hops");
+                        }
+                        return;
+                    }
+
+                    for (SimpleNodeInfo info : reply.getCandidates()) {
+                        NodeInfo next = new NodeInfo(info);
+
+                        // only candidates closer to the key than the one that suggested them, so every step makes progress
+                        if (between(next.key, candidate.node.key, this.key)) {
+                            this.offer(next, candidate.hops + 1);
+                        }
+                    }
+                } catch (IOException | NoSuchAlgorithmException e) {
+                    ConsoleLogger.log(Level.FINE, "Bad lookup step reply from " + candidate.node.id);
+                }
+            }
+        }
+
+        this.launch();
+    }
+}
@@ -0,0 +1,29 @@
+package com.dbs.chord;
+
+import static com.dbs.chord.Utils.between;
+
+/**
+ * Keys a node is responsible for: from start, exclusive, to the node's own key, inclusive
+ */
+public class KeyRange {
+
+    private final long start;
+    private final NodeInfo node;
+
+    public KeyRange(long start, NodeInfo node) {
+        this.start = start;
+        this.node = node;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public NodeInfo getNode() {
+        return node;
+    }
+
+    public boolean contains(long key) {
+        return key == this.node.key || between(key, this.start, this.node.key);
+    }
+}
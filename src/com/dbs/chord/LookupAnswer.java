@@ -0,0 +1,39 @@
+package com.dbs.chord;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+
+/**
+ * What a node knows about one key of a batch lookup: either the key's successor and where its range starts, or the
+ * node to ask next. The missing one is a NullSimpleNodeInfo
+ */
+public class LookupAnswer implements Serializable {
+
+    private final BigInteger key;
+    private final SimpleNodeInfo successor;
+    private final BigInteger rangeStart;
+    private final SimpleNodeInfo next;
+
+    public LookupAnswer(BigInteger key, SimpleNodeInfo successor, BigInteger rangeStart, SimpleNodeInfo next) {
+        this.key = key;
+        this.successor = successor;
+        this.rangeStart = rangeStart;
+        this.next = next;
+    }
+
+    public BigInteger getKey() {
+        return key;
+    }
+
+    public SimpleNodeInfo getSuccessor() {
+        return successor;
+    }
+
+    public BigInteger getRangeStart() {
+        return rangeStart;
+    }
+
+    public SimpleNodeInfo getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dbs.chord;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of the key ranges found by recent lookups, so that operations on keys whose responsible node is
+ * already known skip routing. Entries expire after a TTL, and are dropped earlier when the ring around this node
+ * changes or the node they point to stops answering. When full, the oldest entries make room for new ones.
+ */
+public class LookupCache {
+
+    private static class Entry {
+        final KeyRange range;
+        final long expiresAt;
+
+        Entry(KeyRange range, long expiresAt) {
+            this.range = range;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+
+    // Keyed by the key of the responsible node, which is where its range ends
+    private final ConcurrentSkipListMap<Long, Entry> ranges = new ConcurrentSkipListMap<>(Long::compareUnsigned);
+
+    public LookupCache(int capacity, long ttlMs) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    /**
+     * @param key - key to search
+     * @return the node responsible for key, or null if no live entry covers it
+     */
+    public NodeInfo get(long key) {
+        // the range holding key, if cached, is the one of the first node at or after key
+        Map.Entry<Long, Entry> cached = this.ranges.ceilingEntry(key);
+        if (cached == null) {
+            cached = this.ranges.firstEntry();
+        }
+        if (cached == null) {
+            return null;
+        }
+
+        Entry entry = cached.getValue();
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            this.ranges.remove(cached.getKey(), entry);
+            return null;
+        }
+
+        return entry.range.contains(key) ? entry.range.getNode() : null;
+    }
+
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    public void put(KeyRange range) {
+        if (this.capacity <= 0) return;
+
+        if (this.ranges.size() >= this.capacity) {
+            this.evict();
+        }
+
+        this.ranges.put(range.getNode().key, new Entry(range, System.nanoTime() + this.ttlNanos));
+    }
+
+    /**
+     * Drops the entry covering key, after a request sent to its node was rejected
+     */
+    public void invalidate(long key) {
+        Map.Entry<Long, Entry> cached = this.ranges.ceilingEntry(key);
+        if (cached == null) {
+            cached = this.ranges.firstEntry();
+        }
+
+        if (cached != null && cached.getValue().range.contains(key)) {
+            this.ranges.remove(cached.getKey(), cached.getValue());
+        }
+    }
+
+    /**
+     * Drops the entries pointing to a node that stopped answering
+     */
+    public void invalidate(SimpleNodeInfo node) {
+        this.ranges.values().removeIf(entry -> entry.range.getNode().port == node.port
+                && entry.range.getNode().address.equals(node.address));
+    }
+
+    public void clear() {
+        this.ranges.clear();
+    }
+
+    /**
+     * Drops the expired entries and, if that is not enough, the oldest ones. An eighth of the capacity is freed at
+     * once, so that a full cache is not scanned on every put
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        this.ranges.values().removeIf(entry -> now - entry.expiresAt > 0);
+
+        int excess = this.ranges.size() - this.capacity + Math.max(1, this.capacity / 8);
+        if (excess <= 0) return;
+
+        // every entry lives for the same TTL, so the first to expire is the oldest
+        List<Map.Entry<Long, Entry>> oldest = new ArrayList<>(this.ranges.entrySet());
+        oldest.sort((a, b) -> Long.signum(a.getValue().expiresAt - b.getValue().expiresAt));
+
+        for (Map.Entry<Long, Entry> cached : oldest.subList(0, Math.min(excess, oldest.size()))) {
+            this.ranges.remove(cached.getKey(), cached.getValue());
+        }
+    }
+}
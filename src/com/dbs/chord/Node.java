@@ -4,25 +4,35 @@ import com.dbs.protocols.DistributedBackupServiceAdapter;
 import com.dbs.protocols.backup.BackupManager;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.network.Communicator;
+import com.dbs.filemanager.FileManager;
+import com.dbs.filemanager.FileReplicaStore;
+import com.dbs.filemanager.ReplicaStore;
+import com.dbs.filemanager.SegmentReplicaStore;
 import com.dbs.network.NullNodeInfo;
+import com.dbs.network.NullSimpleNodeInfo;
 import com.dbs.network.messages.*;
 import com.dbs.protocols.delete.DeleteManager;
+import com.dbs.protocols.leave.LeaveManager;
 import com.dbs.protocols.reclaim.ReclaimManager;
 import com.dbs.protocols.restore.RestoreManager;
 import com.dbs.utils.ConsoleLogger;
-import com.dbs.utils.Network;
+import com.dbs.utils.Metrics;
 import com.dbs.utils.State;
 
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLSocket;
-import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
-import java.util.NavigableSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import static com.dbs.chord.Utils.between;
@@ -33,9 +43,38 @@ public class Node implements Chord {
     public static final int INITIAL_SPACE_LIMIT_BYTES = (int) (600 * 10e3);
     public static final int REQUEST_TIMEOUT_MS = 5000;
     private static final int THREAD_POOL_SIZE = 150;
+    private static final int MAINTENANCE_POOL_SIZE = 4;
+    // "pool" runs everything on THREAD_POOL_SIZE platform threads. "virtual" runs message handlers on virtual threads
+    // and keeps only the periodic Chord maintenance on MAINTENANCE_POOL_SIZE platform threads
+    private static final String EXECUTION_MODE = System.getProperty("dbs.execution", "pool");
     private static final int STABILIZATION_INTERVAL_MS = 200;
     private static final int FIX_FINGER_INTERVAL_MS = 200;
     private static final int CHECK_PREDECESSOR_INTERVAL_MS = 200;
+    // The intervals above are the fastest maintenance runs at. While the ring stays the same they double up to this
+    private static final int MAX_MAINTENANCE_INTERVAL_MS = Integer.getInteger("dbs.chord.maxMaintenanceIntervalMs", 5000);
+    // "single" fixes one finger per run with its own lookup. "batch" refreshes the whole table per run with FingerRefresh
+    private static final String FINGER_REFRESH_MODE = System.getProperty("dbs.chord.fingerRefresh", "single");
+    // Number of successors each node keeps track of, so it can skip over up to SUCCESSOR_LIST_SIZE - 1 failed nodes
+    private static final int SUCCESSOR_LIST_SIZE = Integer.getInteger("dbs.chord.successors", 3);
+    // "recursive" forwards a lookup from node to node. "iterative" has the origin ask each node on the way itself,
+    // with LOOKUP_PARALLELISM queries in flight
+    private static final String LOOKUP_MODE = System.getProperty("dbs.chord.lookup", "recursive");
+    private static final int LOOKUP_PARALLELISM = Integer.getInteger("dbs.chord.lookupParallelism", 3);
+    // Number of key ranges remembered by findSuccessorCached, 0 to disable, and how long each is trusted
+    private static final int LOOKUP_CACHE_SIZE = Integer.getInteger("dbs.chord.lookupCache.size", 1024);
+    private static final long LOOKUP_CACHE_TTL_MS = Long.getLong("dbs.chord.lookupCache.ttlMs", 30000);
+    // Ring positions taken by each peer. With bytesPerVirtualNode set, a peer takes one per that many bytes of its
+    // space limit instead, so peers with more space own more of the ring. Capped at MAX_VIRTUAL_NODES
+    private static final int VIRTUAL_NODES = Integer.getInteger("dbs.chord.virtualNodes", 1);
+    private static final long BYTES_PER_VIRTUAL_NODE = Long.getLong("dbs.chord.bytesPerVirtualNode", 0);
+    // The virtual node index travels as a single byte
+    private static final int MAX_VIRTUAL_NODES = 256;
+    // "wal" keeps the node's state in a write-ahead log under its access point, so it survives a restart.
+    // "none" keeps it in memory only
+    private static final String STATE_PERSISTENCE = System.getProperty("dbs.state.persistence", "wal");
+    // "files" keeps the content of each stored file in a file of its own. "segments" appends it to large segment
+    // files, which suits peers storing many small files
+    private static final String REPLICA_STORE = System.getProperty("dbs.storage.engine", "files");
     public static String NODE_PATH;
 
     private DistributedBackupServiceAdapter dbsAdapter;
@@ -44,19 +83,41 @@ public class Node implements Chord {
     private RestoreManager restoreManager;
     private DeleteManager deleteManager;
     private ReclaimManager reclaimManager;
+    private LeaveManager leaveManager;
 
 
     private ScheduledExecutorService threadPool;
+    private ExecutorService executor;
     private Communicator communicator;
 
-    private ConcurrentSkipListMap<Integer, NodeInfo> fingerTable;
+    // Entry i is the successor of n + 2^(i-1), for i in 1..NUM_BITS_KEYS. Entry 0 is unused
+    private AtomicReferenceArray<NodeInfo> fingerTable;
 
     private NodeInfo nodeInfo;
-    private NodeInfo predecessor;
-    private NodeInfo successor;
+    private volatile NodeInfo predecessor;
+    private volatile NodeInfo successor;
+    // Immutable, replaced as a whole. The first entry is always the current successor
+    private volatile List<NodeInfo> successorList = List.of();
+    // System.nanoTime() of the last heartbeat received from the predecessor, 0 if none since it was set
+    private volatile long lastPredecessorHeartbeat = 0;
+    // Set once this node starts leaving the ring. From then on its keys are answered with its successor
+    private volatile boolean leaving = false;
+
+    // Shared by all virtual nodes of a peer, like the state, communicator and executors
+    private LookupCache lookupCache;
+
+    private Metrics metrics;
+
+    // Bumped by ringChanged, so maintenance tasks can tell whether a run changed anything
+    private final AtomicLong ringVersion = new AtomicLong();
+    private AdaptiveSchedule stabilizer;
+    private AdaptiveSchedule fingerFixer;
+    private AdaptiveSchedule predecessorChecker;
+    private volatile int lastFingerRefreshRounds = 0;
 
     private int nextFinger = 0;
     private State state;
+    private ReplicaStore replicaStore;
 
 
     public Node(NodeInfo nodeInfo) throws IOException, NoSuchAlgorithmException {
@@ -65,6 +126,7 @@ public class Node implements Chord {
 
         this.create();
 
+        this.startVirtualNodes();
     }
 
     public Node(NodeInfo nodeInfo, NodeInfo existingNode) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
@@ -73,6 +135,25 @@ public class Node implements Chord {
 
         this.join(existingNode);
 
+        this.startVirtualNodes();
+    }
+
+    /**
+     * Another ring position of peer, sharing its listener, state and storage but with its own neighbours and fingers
+     *
+     * @param peer  - first node of the peer
+     * @param vnode - index of this node among the peer's nodes
+     */
+    private Node(Node peer, int vnode) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+
+        this.initVirtualNode(peer, vnode);
+
+        try {
+            this.join(peer.nodeInfo);
+        } catch (IOException | NoSuchAlgorithmException | ExecutionException | InterruptedException e) {
+            this.communicator.unregister(this);
+            throw e;
+        }
     }
 
     public Node(InetAddress address, int port, NodeInfo successor) throws NoSuchAlgorithmException, IOException, ExecutionException, InterruptedException {
@@ -94,21 +175,126 @@ public class Node implements Chord {
         Node.NODE_PATH = nodeAP;
 
 
+        if (EXECUTION_MODE.equals("virtual")) {
+            this.threadPool = Executors.newScheduledThreadPool(MAINTENANCE_POOL_SIZE);
+            this.executor = createVirtualThreadExecutor();
+        } else {
+            this.threadPool = Executors.newScheduledThreadPool(THREAD_POOL_SIZE);
+            this.executor = this.threadPool;
+        }
+
+        this.lookupCache = new LookupCache(LOOKUP_CACHE_SIZE, LOOKUP_CACHE_TTL_MS);
+        this.metrics = new Metrics();
+
         this.backupManager = new BackupManager(this);
         this.restoreManager = new RestoreManager(this);
         this.deleteManager = new DeleteManager(this);
         this.reclaimManager = new ReclaimManager(this);
+        this.leaveManager = new LeaveManager(this);
 
         this.dbsAdapter = new DistributedBackupServiceAdapter(this);
 
+        this.fingerTable = new AtomicReferenceArray<>(Chord.NUM_BITS_KEYS + 1);
+
+        this.state = STATE_PERSISTENCE.equals("none") ? new State() : State.open(FileManager.getOrCreateDirectory("metadata", nodeAP), this.threadPool);
+        this.replicaStore = REPLICA_STORE.equals("segments")
+                ? SegmentReplicaStore.open(FileManager.getOrCreateDirectory("segments", nodeAP), this.threadPool)
+                : new FileReplicaStore(FileManager.getOrCreateDirectory("backup", nodeAP));
+
+        this.startListening();
+    }
 
-        this.threadPool = Executors.newScheduledThreadPool(THREAD_POOL_SIZE);
+    private void initVirtualNode(Node peer, int vnode) throws NoSuchAlgorithmException {
+        this.nodeInfo = new NodeInfo(peer.nodeInfo.address, peer.nodeInfo.port, vnode);
+        this.nodeInfo.setAccessPoint(peer.nodeInfo.getAccessPoint());
 
-        this.fingerTable = new ConcurrentSkipListMap<>();
+        ConsoleLogger.log(Level.SEVERE, "My ID: " + this.nodeInfo.id + " (virtual node " + vnode + ")");
 
-        this.state = new State();
+        this.threadPool = peer.threadPool;
+        this.executor = peer.executor;
+        this.lookupCache = peer.lookupCache;
+        this.metrics = peer.metrics;
+        this.state = peer.state;
+        this.replicaStore = peer.replicaStore;
+        this.communicator = peer.communicator;
 
-        this.startListening();
+        this.backupManager = new BackupManager(this);
+        this.restoreManager = new RestoreManager(this);
+        this.deleteManager = new DeleteManager(this);
+        this.reclaimManager = new ReclaimManager(this);
+        this.leaveManager = new LeaveManager(this);
+
+        this.fingerTable = new AtomicReferenceArray<>(Chord.NUM_BITS_KEYS + 1);
+
+        this.communicator.register(this);
+    }
+
+    /**
+     * Joins the rest of this peer's ring positions through this node. A position that fails to join is left out and
+     * messages for its index are dropped, while the positions after it still join with their own indexes
+     */
+    private void startVirtualNodes() {
+        long count = VIRTUAL_NODES;
+        if (BYTES_PER_VIRTUAL_NODE > 0) {
+            count = (this.state.getMaxSpace() + BYTES_PER_VIRTUAL_NODE - 1) / BYTES_PER_VIRTUAL_NODE;
+        }
+        count = Math.max(1, Math.min(MAX_VIRTUAL_NODES, count));
+
+        for (int vnode = 1; vnode < count; vnode++) {
+            try {
+                new Node(this, vnode);
+            } catch (IOException | NoSuchAlgorithmException | ExecutionException e) {
+                ConsoleLogger.log(SEVERE, "Virtual node " + vnode + " could not join: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (count > 1) {
+            this.metrics.gauge("virtual nodes", () -> this.communicator.getVirtualNodes().size());
+        }
+    }
+
+    /**
+     * @return whether another ring position of this peer is responsible for key, as far as it knows
+     */
+    public boolean isOwnedBySibling(long key) {
+        for (Node sibling : this.communicator.getVirtualNodes()) {
+            NodeInfo predecessor = sibling.predecessor;
+
+            if (sibling != this && predecessor != null && between(key, predecessor.key, sibling.nodeInfo.key)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Requests that this peer cannot take, for lack of space, go to the next peer this way instead of through its
+     * other positions, which share the same space
+     *
+     * @return the first node after this one that runs on another peer, or a node of this peer if it is alone in the ring
+     */
+    public NodeInfo getNextPeer() throws ExecutionException, InterruptedException {
+        NodeInfo next = this.successor;
+
+        for (NodeInfo node : this.successorList) {
+            next = node;
+            if (!this.isSibling(next)) return next;
+        }
+
+        // the whole successor list is on this peer, so continue past its end, at most once per position of this peer
+        for (int i = 0; i < MAX_VIRTUAL_NODES && this.isSibling(next) && next.key != this.nodeInfo.key; i++) {
+            next = this.findSuccessorAsync(next.key + 1).get();
+        }
+
+        return next;
+    }
+
+    private boolean isSibling(NodeInfo node) {
+        return node.port == this.nodeInfo.port && this.nodeInfo.address.equals(node.address);
     }
 
     @Override
@@ -126,53 +312,317 @@ public class Node implements Chord {
      */
     @Override
     public NodeInfo findSuccessor(BigInteger key) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        return this.findSuccessorAsync(key).get();
+    }
+
+    /**
+     * Same as findSuccessor, without blocking while the request to the next hop is answered
+     *
+     * @param key - key to search
+     * @return future resolved with the NodeInfo of the key's successor
+     */
+    public CompletableFuture<NodeInfo> findSuccessorAsync(BigInteger key) {
+        return this.findSuccessorAsync(key.longValue());
+    }
+
+    /**
+     * Same as findSuccessorAsync, for a key held as an unsigned long. A key this node answers costs only the completed
+     * future returned; messages and key objects are only built when the request has to be forwarded to another node
+     *
+     * @param key - key to search
+     * @return future resolved with the NodeInfo of the key's successor
+     */
+    public CompletableFuture<NodeInfo> findSuccessorAsync(long key) {
+        NodeInfo successor = this.localSuccessor(key);
+        if (successor != null) {
+            return CompletableFuture.completedFuture(successor);
+        }
+
+        return this.findRemoteRange(key).thenApply(KeyRange::getNode);
+    }
+
+    /**
+     * Same as findSuccessor, answered from the lookup cache when key is in a range found recently.
+     * Meant for operations on replicas; Chord maintenance always routes
+     *
+     * @param key - key to search
+     * @return NodeInfo of successor's node
+     */
+    public NodeInfo findSuccessorCached(BigInteger key) throws ExecutionException, InterruptedException {
+        return this.findSuccessorCachedAsync(key).get();
+    }
+
+    public CompletableFuture<NodeInfo> findSuccessorCachedAsync(BigInteger key) {
+        long longKey = key.longValue();
+
+        NodeInfo successor = this.localSuccessor(longKey);
+        if (successor == null) {
+            successor = this.lookupCache.get(longKey);
+        }
+        if (successor != null) {
+            return CompletableFuture.completedFuture(successor);
+        }
+
+        return this.findRemoteRange(longKey).thenApply(range -> {
+            this.lookupCache.put(range);
+            return range.getNode();
+        });
+    }
+
+    /**
+     * Asks the ring for the successor of a key this node is not responsible for
+     *
+     * @param key - key to search
+     * @return future resolved with the key's successor and the range it is responsible for
+     */
+    private CompletableFuture<KeyRange> findRemoteRange(long key) {
+        if (LOOKUP_MODE.equals("iterative")) {
+            return new IterativeLookup(this, key, LOOKUP_PARALLELISM).start(this.closestPrecedingNodes(key, LOOKUP_PARALLELISM));
+        }
+
+        NodeInfo nextNode = closestPrecedingNode(key);
+        try {
+            FindSuccessorMessage msg = new FindSuccessorMessage(new SimpleNodeInfo(this.nodeInfo), Utils.toBigInteger(key));
+            return this.communicator.request(nextNode, msg).thenApply(response -> {
+                SuccessorMessage reply = (SuccessorMessage) response;
+                try {
+                    return new KeyRange(reply.getRangeStart().longValue(), new NodeInfo(reply.getNode()));
+                } catch (IOException | NoSuchAlgorithmException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Warms the lookup cache with the successors of every replica key this node cannot resolve on its own, using one
+     * batched lookup, so the per replica lookups that follow are answered locally. Keys the batch could not resolve are
+     * left to those lookups
+     *
+     * @param replicaIds - replicas about to be operated on
+     */
+    public void prefetchSuccessors(ReplicaIdentifier[] replicaIds) {
+        if (!this.lookupCache.isEnabled()) return;
+
+        List<BigInteger> keys = new ArrayList<>();
+        for (ReplicaIdentifier replicaId : replicaIds) {
+            long key = replicaId.getKey();
+            if (this.localSuccessor(key) == null && this.lookupCache.get(key) == null) {
+                keys.add(replicaId.getHash());
+            }
+        }
+        if (keys.isEmpty()) return;
+
+        try {
+            for (LookupAnswer answer : this.findSuccessorsAsync(keys).get()) {
+                this.lookupCache.put(new KeyRange(answer.getRangeStart().longValue(), new NodeInfo(answer.getSuccessor())));
+            }
+        } catch (ExecutionException | IOException | NoSuchAlgorithmException e) {
+            ConsoleLogger.log(Level.FINE, "Batched successor lookup failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finds the successors of several keys at once. Keys this node can answer are answered here, the others are split
+     * by the node they would be forwarded to and each group is sent in a single FindSuccessorsMessage, so the number of
+     * messages grows with the routes taken rather than with the keys
+     *
+     * @param keys - keys to search
+     * @return future resolved with the answers found. Keys behind a node that failed to answer are missing
+     */
+    public CompletableFuture<List<LookupAnswer>> findSuccessorsAsync(List<BigInteger> keys) throws IOException, NoSuchAlgorithmException {
+        List<LookupAnswer> answers = new ArrayList<>(keys.size());
+        // keys to forward by the key of the next hop, as the same node may be known through different NodeInfos
+        Map<Long, List<BigInteger>> routes = new LinkedHashMap<>();
+        Map<Long, NodeInfo> targets = new HashMap<>();
+
+        for (BigInteger key : keys) {
+            NodeInfo successor = this.localSuccessor(key.longValue());
+
+            if (successor != null) {
+                answers.add(new LookupAnswer(key, new SimpleNodeInfo(successor), this.rangeStartOf(successor), new NullSimpleNodeInfo()));
+                continue;
+            }
+
+            NodeInfo nextNode = this.closestPrecedingNode(key.longValue());
+            if (nextNode.key == this.nodeInfo.key) {
+                nextNode = this.successor;
+            }
+            targets.putIfAbsent(nextNode.key, nextNode);
+            routes.computeIfAbsent(nextNode.key, node -> new ArrayList<>()).add(key);
+        }
+
+        List<CompletableFuture<List<LookupAnswer>>> forwarded = new ArrayList<>(routes.size());
+        routes.forEach((target, targetKeys) -> forwarded.add(this.requestSuccessors(targets.get(target), targetKeys)));
+
+        return CompletableFuture.allOf(forwarded.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            for (CompletableFuture<List<LookupAnswer>> future : forwarded) {
+                answers.addAll(future.join());
+            }
+            return answers;
+        });
+    }
+
+    /**
+     * @return future resolved with target's answers, or with no answers if target could not be reached
+     */
+    private CompletableFuture<List<LookupAnswer>> requestSuccessors(NodeInfo target, List<BigInteger> keys) {
+        try {
+            FindSuccessorsMessage msg = new FindSuccessorsMessage(new SimpleNodeInfo(this.nodeInfo), keys);
+            return this.communicator.request(target, msg)
+                    .thenApply(response -> ((SuccessorsMessage) response).getAnswers())
+                    .exceptionally(e -> {
+                        ConsoleLogger.log(Level.FINE, "Successors request to " + target.id + " failed: " + e.getMessage());
+                        return List.of();
+                    });
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+    }
+
+    /**
+     * Answers a multi-key lookup, forwarding the keys this node cannot answer grouped by next hop, and replies once all
+     * of them came back
+     *
+     * @param request - lookup to answer
+     */
+    public void handleSuccessorsRequest(FindSuccessorsMessage request) throws IOException, NoSuchAlgorithmException {
+        this.findSuccessorsAsync(request.getKeys()).thenAccept(answers -> {
+            try {
+                this.communicator.reply(request.getResponseSocketInfo(), request, new SuccessorsMessage(answers));
+            } catch (IOException e) {
+                ConsoleLogger.log(Level.FINE, "Could not answer successors request: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * @param answer - successor of some key, as found by localSuccessor
+     * @return where the range of keys answer is responsible for starts, as far as this node knows
+     */
+    private BigInteger rangeStartOf(NodeInfo answer) {
+        if (answer.key != this.nodeInfo.key) {
+            // answer is this node's successor
+            return this.nodeInfo.id;
+        }
+
+        NodeInfo predecessor = this.predecessor;
+        return Utils.toBigInteger(predecessor != null ? predecessor.key : this.nodeInfo.key - 1);
+    }
+
+    /**
+     * @param key - key to search
+     * @return the successor of key if this node can tell it without asking anyone, null otherwise
+     */
+    NodeInfo localSuccessor(long key) {
+        NodeInfo successor = this.successor;
+        NodeInfo owner = this.localOwner(key);
+
+        // a leaving node hands its keys to its successor, so nothing is placed on it anymore
+        if (this.leaving && owner == this.nodeInfo && successor.key != this.nodeInfo.key) {
+            return successor;
+        }
+
+        return owner;
+    }
+
+    private NodeInfo localOwner(long key) {
+        NodeInfo predecessor = this.predecessor;
+        NodeInfo successor = this.successor;
+        long self = this.nodeInfo.key;
 
         //if this is the starter node, it is responsible for any key for now
-        if (this.successor.id.equals(this.nodeInfo.id)) {
+        if (successor.key == self) {
             return this.nodeInfo;
         }
 
         //if this node currently has no predecessor and the key equals this node's id, this is the responsible node
-        if (this.predecessor == null && key.equals(this.nodeInfo.id)) {
-
+        if (predecessor == null && key == self) {
             return this.nodeInfo;
         }
 
         //if there is a predecessor and the key is between predecessor and current node, current node is responsible
-        if (this.predecessor != null && between(key, predecessor.id, this.nodeInfo.id)) {
-
+        if (predecessor != null && between(key, predecessor.key, self)) {
             return this.nodeInfo;
         }
 
         //if key > node && key <= successor
-        if (between(key, this.nodeInfo.id, this.successor.id) || key.equals(this.successor.id)) {
+        if (between(key, self, successor.key) || key == successor.key) {
+            return successor;
+        }
 
-            return this.successor;
-        } else {
+        return null;
+    }
+
+    private NodeInfo closestPrecedingNode(long key) {
+        long self = this.nodeInfo.key;
+
+        for (int finger = Chord.NUM_BITS_KEYS; finger >= 1; finger--) {
+            NodeInfo node = this.fingerTable.get(finger);
 
-            NodeInfo nextNode = closestPrecedingNode(key);
-            return this.requestSuccessor(nextNode, key);
+            if (node != null && between(node.key, self, key)) {
+                return node;
+            }
+        }
+
+        return this.nodeInfo;
+    }
+
+    /**
+     * @param key   - key to search
+     * @param count - maximum number of nodes to return
+     * @return known nodes from the finger table and successor list that precede key, closest to it first
+     */
+    private List<NodeInfo> closestPrecedingNodes(long key, int count) {
+        List<NodeInfo> known = new ArrayList<>(this.successorList);
+        for (int finger = Chord.NUM_BITS_KEYS; finger >= 1; finger--) {
+            NodeInfo node = this.fingerTable.get(finger);
+            if (node != null) known.add(node);
+        }
+
+        List<NodeInfo> nodes = new ArrayList<>();
+        for (NodeInfo node : known) {
+            if (between(node.key, this.nodeInfo.key, key) && nodes.stream().noneMatch(other -> other.key == node.key)) {
+                nodes.add(node);
+            }
         }
 
+        nodes.sort((a, b) -> Long.compareUnsigned(key - a.key, key - b.key));
+
+        return nodes.size() > count ? new ArrayList<>(nodes.subList(0, count)) : nodes;
     }
 
-    private NodeInfo closestPrecedingNode(BigInteger key) {
-        NavigableSet<Integer> fingers = fingerTable.descendingKeySet();
+    /**
+     * Answers one step of another node's iterative lookup, without forwarding it
+     *
+     * @param request - lookup step to answer
+     */
+    public void handleLookupStep(LookupStepMessage request) throws IOException, NoSuchAlgorithmException {
+        long key = request.getKey().longValue();
 
-        for (Integer finger : fingers) {
+        NodeInfo successor = this.localSuccessor(key);
+        LookupStepReplyMessage msg;
 
-            if (between(this.fingerTable.get(finger).id, this.nodeInfo.id, key)) {
-                return this.fingerTable.get(finger);
+        if (successor != null) {
+            msg = new LookupStepReplyMessage(new SimpleNodeInfo(successor), this.rangeStartOf(successor), List.of());
+        } else {
+            List<SimpleNodeInfo> candidates = new ArrayList<>();
+            for (NodeInfo node : this.closestPrecedingNodes(key, LOOKUP_PARALLELISM)) {
+                candidates.add(new SimpleNodeInfo(node));
             }
+            msg = new LookupStepReplyMessage(new NullSimpleNodeInfo(), BigInteger.ZERO, candidates);
         }
 
-        return this.nodeInfo;
+        this.communicator.reply(request.getResponseSocketInfo(), request, msg);
     }
 
     /**
-     * Inserts a Future in the ongoingOperations Map and waits for the future to resolve with given timeout
-     * Sends a TCP message to target node to find the successor of key
-     * When this node receives a msg regarding this request, the promise is resovled with the nodeinfo attached and this function returns
+     * Sends a request to target node to find the successor of key and waits for the correlated reply.
+     * The reply is delivered to this node's listener and fails with a timeout after REQUEST_TIMEOUT_MS
      *
      * @param targetNode - node to request
      * @param key        - key to find
@@ -180,41 +630,30 @@ public class Node implements Chord {
      */
     private NodeInfo requestSuccessor(NodeInfo targetNode, BigInteger key) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
-        //ServerSocket tempSocket = new ServerSocket(0);
-        SSLServerSocket tempSocket = Network.createServerSocket(0);
-        tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
+        FindSuccessorMessage msg = new FindSuccessorMessage(new SimpleNodeInfo(this.nodeInfo), key);
 
-        FindSuccessorMessage msg = new FindSuccessorMessage(new SimpleNodeInfo(this.nodeInfo.address, tempSocket.getLocalPort()), key);
-
-        SSLSocket targetSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket(targetNode.address, targetNode.port);
-
-        Future<NodeInfo> request = this.communicator.listenOnSocket(tempSocket);
-        this.communicator.send(targetSocket, msg);
-
-        return request.get();
+        return this.communicator.requestNode(targetNode, msg).get();
     }
 
     /**
-     * If this node is the successor or the predecessor of successor, answers back to temp socket of origin node
-     * Ohterwise, forwards a TCP message to target node to find the successor of key
+     * If this node is the successor or the predecessor of successor, answers back to the origin node
+     * Ohterwise, forwards the request to target node, keeping its request id so the origin can match the answer
      *
-     * @param responseSocketInfo - socket info to send the response
-     * @param key                - key to find
+     * @param request - request to answer
      * @return
      */
-    public void handleSuccessorRequest(SimpleNodeInfo responseSocketInfo, BigInteger key) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+    public void handleSuccessorRequest(FindSuccessorMessage request) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
+        BigInteger key = request.getKey();
 
         NodeInfo successor = this.findSuccessor(key);
-        NodeInfo asker = new NodeInfo(responseSocketInfo);
 
         //If we already know the actual successor
         if (successor.equals(this.nodeInfo) || successor.equals(this.successor)) {
-            SuccessorMessage msg = new SuccessorMessage(key, new SimpleNodeInfo(successor));
-            this.communicator.send(Utils.createClientSocket(asker.address, asker.port), msg);
+            SuccessorMessage msg = new SuccessorMessage(key, new SimpleNodeInfo(successor), this.rangeStartOf(successor));
+            this.communicator.reply(request.getResponseSocketInfo(), request, msg);
         } else { //else propagate to other target, based on fingerTable
-            FindSuccessorMessage msg = new FindSuccessorMessage(responseSocketInfo, key);
-            this.communicator.send(Utils.createClientSocket(successor.address, successor.port), msg);
+            this.communicator.send(successor, request);
         }
 
     }
@@ -239,6 +678,8 @@ public class Node implements Chord {
 
         this.setSuccessor(succ);
 
+        this.copyFingerTable(succ);
+
         this.bootstrapStabilizer();
         this.bootstrapFixFingers();
         this.bootstrapCheckPredecessor();
@@ -250,7 +691,7 @@ public class Node implements Chord {
 
         NotifySuccessorMessage msg = new NotifySuccessorMessage(new SimpleNodeInfo(this.nodeInfo));
 
-        this.communicator.send(Utils.createClientSocket(successor.address, successor.port), msg);
+        this.communicator.send(successor, msg);
 
     }
 
@@ -261,9 +702,12 @@ public class Node implements Chord {
      */
     @Override
     public void handlePredecessorNotification(SimpleNodeInfo potentialPredecessorInfo) throws IOException, NoSuchAlgorithmException {
+        if (this.leaving) return;
+
         NodeInfo potentialPredecessor = new NodeInfo(potentialPredecessorInfo);
 
-        if (this.predecessor == null || this.predecessor.id.equals(this.nodeInfo.id) || between(potentialPredecessor.id, this.predecessor.id, this.nodeInfo.id)) {
+        NodeInfo predecessor = this.predecessor;
+        if (predecessor == null || predecessor.key == this.nodeInfo.key || between(potentialPredecessor.key, predecessor.key, this.nodeInfo.key)) {
             this.setPredecessor(potentialPredecessor);
 
             this.backupManager.redistributeEligibleReplicas(potentialPredecessor);
@@ -277,67 +721,214 @@ public class Node implements Chord {
     @Override
     public void stabilize() throws IOException, InterruptedException, NoSuchAlgorithmException {
         NodeInfo x;
-        if (this.successor.id.equals(this.nodeInfo.id)) {
+        if (this.successor.key == this.nodeInfo.key) {
 
             if (this.predecessor == null) return;
 
             x = this.predecessor;
 
         } else {
+            NodeInfo successor = this.successor;
+            PredecessorMessage reply;
             try {
-                x = requestPredecessor(this.successor);
+                // also notifies the successor, so a stable ring needs a single round trip
+                reply = sendHeartbeat(successor);
             } catch (ExecutionException | SocketException e) {
                 //if this request fails, it means my successor prolly is offline, must update stuffs
                 this.handleSuccessorFail();
                 return;
             }
+
+            x = toNodeInfo(reply.getNode());
+            this.updateSuccessorList(successor, reply.getSuccessors());
         }
 
+        NodeInfo notified = this.successor;
 
         if (!(x instanceof NullNodeInfo)) {
-            if (!x.id.equals(this.successor.id) && between(x.id, this.nodeInfo.id, this.successor.id)) {
+            if (x.key != this.successor.key && between(x.key, this.nodeInfo.key, this.successor.key)) {
                 this.setSuccessor(x);
-            } else if (this.successor.id.equals(this.nodeInfo.id) && this.predecessor != null) { // when I have a predecessor (newly joined node) but it should be my successor
+            } else if (this.successor.key == this.nodeInfo.key && this.predecessor != null) { // when I have a predecessor (newly joined node) but it should be my successor
                 this.setSuccessor(this.predecessor);
             }
         }
 
+        // the heartbeat went to the previous successor, so the new one has not heard from this node yet
+        if (this.successor != notified || notified.key == this.nodeInfo.key) {
+            try {
+                this.notify(this.successor);
+            } catch (Exception e) {
+                //Successor was removed before sending notification
+            }
+        }
 
-        try {
-            this.notify(this.successor);
-        } catch (Exception e) {
-            //Successor was removed before sending notification
+    }
+
+    /**
+     * Replaces the failed successor with the first live node of the successor list, so lookups keep going without
+     * waiting for the ring to heal. Falls back to this node if none of them answers
+     */
+    @Override
+    public void handleSuccessorFail() throws IOException, NoSuchAlgorithmException, InterruptedException {
+        NodeInfo failed = this.successor;
+        ConsoleLogger.log(SEVERE, "Successor " + failed.id + " went offline");
+        this.forgetNode(failed);
+
+        for (NodeInfo candidate : this.successorList) {
+            if (candidate.key == this.nodeInfo.key) continue;
+
+            PredecessorMessage reply;
+            try {
+                reply = sendHeartbeat(candidate);
+            } catch (ExecutionException | SocketException e) {
+                this.forgetNode(candidate);
+                continue;
+            }
+
+            this.setSuccessor(candidate);
+            this.updateSuccessorList(candidate, reply.getSuccessors());
+            return;
         }
 
+        this.setSuccessor(new NullNodeInfo());
     }
 
+    /**
+     * Takes this node out of the ring. Stops its maintenance, so it no longer claims to be anyone's predecessor, and has
+     * its predecessor and successor link to each other. The node keeps answering lookups, with its successor for its
+     * own keys, until the process exits, so the replicas it hands off afterwards are not placed back on it
+     */
     @Override
-    public void handleSuccessorFail() {
-        ConsoleLogger.log(SEVERE, "Successor offline - Fault tolerance not implemented");
+    public void leave() throws IOException, NoSuchAlgorithmException, InterruptedException {
+        this.leaving = true;
+
+        for (AdaptiveSchedule schedule : new AdaptiveSchedule[]{this.stabilizer, this.fingerFixer, this.predecessorChecker}) {
+            if (schedule != null) schedule.stop();
+        }
+        this.lookupCache.clear();
+
+        NodeInfo predecessor = this.predecessor;
+        NodeInfo successor = this.successor;
+        if (successor.key == this.nodeInfo.key) {
+            ConsoleLogger.log(Level.WARNING, "Leaving a ring with no other node");
+            return;
+        }
+
+        LeaveMessage msg = new LeaveMessage(new SimpleNodeInfo(this.nodeInfo),
+                predecessor != null ? new SimpleNodeInfo(predecessor) : new NullSimpleNodeInfo(), new SimpleNodeInfo(successor));
+
+        List<NodeInfo> neighbours = new ArrayList<>(List.of(successor));
+        if (predecessor != null && predecessor.key != this.nodeInfo.key && predecessor.key != successor.key) {
+            neighbours.add(predecessor);
+        }
+
+        for (NodeInfo neighbour : neighbours) {
+            try {
+                this.communicator.request(neighbour, msg).get();
+            } catch (ExecutionException e) {
+                // it finds out through the usual failure detection instead
+                ConsoleLogger.log(Level.WARNING, "Could not tell " + neighbour.id + " that this node is leaving");
+            }
+        }
+
+        ConsoleLogger.log(Level.INFO, "Left the ring, keys now go to " + successor.id);
+    }
+
+    /**
+     * A neighbour is leaving the ring, so this node links to the neighbour's own successor or predecessor
+     *
+     * @param msg - notice from the leaving node
+     */
+    public void handleLeave(LeaveMessage msg) throws IOException, NoSuchAlgorithmException {
+        NodeInfo leaving = new NodeInfo(msg.getSender());
+        NodeInfo predecessor = toNodeInfo(msg.getPredecessor());
+        NodeInfo successor = toNodeInfo(msg.getSuccessor());
+
+        this.forgetNode(leaving);
+
+        if (this.successor.key == leaving.key) {
+            this.setSuccessor(successor);
+        }
+
+        NodeInfo current = this.predecessor;
+        if (current != null && current.key == leaving.key) {
+            boolean none = predecessor instanceof NullNodeInfo || predecessor.key == this.nodeInfo.key;
+            this.setPredecessor(none ? null : predecessor);
+        }
+
+        this.communicator.reply(msg.getSender(), msg, this.neighboursView());
+    }
+
+    public boolean isLeaving() {
+        return leaving;
+    }
+
+    /**
+     * Rebuilds the successor list from the successor and the list it reported, stopping when it wraps back to this node
+     *
+     * @param successor  - current successor
+     * @param successors - successor list reported by successor
+     */
+    private void updateSuccessorList(NodeInfo successor, List<SimpleNodeInfo> successors) throws IOException, NoSuchAlgorithmException {
+        if (this.successor != successor) return; // replaced while the request was in flight
+
+        List<NodeInfo> list = new ArrayList<>(SUCCESSOR_LIST_SIZE);
+        list.add(successor);
+
+        for (SimpleNodeInfo info : successors) {
+            if (list.size() >= SUCCESSOR_LIST_SIZE) break;
+            if (info instanceof NullSimpleNodeInfo || info.address == null) continue;
+
+            NodeInfo node = new NodeInfo(info);
+            if (node.key == this.nodeInfo.key) break;
+
+            if (list.stream().noneMatch(known -> known.key == node.key)) {
+                list.add(node);
+            }
+        }
+
+        this.successorList = List.copyOf(list);
+    }
+
+    /**
+     * Drops a node that stopped answering from the successor list and the finger table
+     *
+     * @param node - failed node
+     */
+    private void forgetNode(NodeInfo node) throws IOException, NoSuchAlgorithmException {
+        this.lookupCache.invalidate(new SimpleNodeInfo(node));
+
+        List<NodeInfo> list = new ArrayList<>(this.successorList);
+        list.removeIf(known -> known.key == node.key);
+        this.successorList = List.copyOf(list);
+
+        for (int finger = 1; finger <= Chord.NUM_BITS_KEYS; finger++) {
+            NodeInfo entry = this.fingerTable.get(finger);
+            if (entry != null && entry.key == node.key) {
+                this.fingerTable.compareAndSet(finger, entry, null);
+            }
+        }
     }
 
 
     @Override
     public synchronized void checkPredecessor() throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
-        if (this.predecessor == null || this.predecessor.id.equals(this.nodeInfo.id)) return;
+        if (this.predecessor == null || this.predecessor.key == this.nodeInfo.key) return;
 
-        SSLServerSocket tempSocket = Network.createServerSocket(0);
-        tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
+        // a heartbeat from the predecessor since about the last check already shows it is alive
+        long window = TimeUnit.MILLISECONDS.toNanos(2 * (this.predecessorChecker != null ? this.predecessorChecker.getIntervalMs() : CHECK_PREDECESSOR_INTERVAL_MS));
+        if (this.lastPredecessorHeartbeat != 0 && System.nanoTime() - this.lastPredecessorHeartbeat < window) return;
 
-        StatusCheckMessage msg = new StatusCheckMessage(new SimpleNodeInfo(this.nodeInfo.address, tempSocket.getLocalPort()));
+        StatusCheckMessage msg = new StatusCheckMessage(new SimpleNodeInfo(this.nodeInfo));
 
         try {
 
-            Future<NodeInfo> request = this.communicator.listenOnSocket(tempSocket);
-
-            this.communicator.send(Utils.createClientSocket(this.predecessor.address, this.predecessor.port), msg);
-
-            request.get();
+            this.communicator.request(this.predecessor, msg).get();
 
         } catch (Exception e) {
             ConsoleLogger.log(SEVERE, "Predecessor went offline!");
-            if (this.predecessor.id.equals(this.successor.id)) {
+            if (this.predecessor.key == this.successor.key) {
                 this.setSuccessor(new NullNodeInfo());
             }
             this.setPredecessor(null);
@@ -346,67 +937,218 @@ public class Node implements Chord {
 
     @Override
     public void fixFingers() throws InterruptedException, ExecutionException, NoSuchAlgorithmException, IOException {
+        if (FINGER_REFRESH_MODE.equals("batch")) {
+            this.refreshFingers();
+            return;
+        }
+
         this.nextFinger += 1;
         if (this.nextFinger > Chord.NUM_BITS_KEYS) {
             this.nextFinger = 1;
         }
-        fingerTable.put(this.nextFinger,
-                this.findSuccessor(
-                        this.nodeInfo.id
-                                .add(BigInteger.valueOf(2)
-                                        .pow(this.nextFinger - 1))
-                                .mod(BigInteger.valueOf(2)
-                                        .pow(Chord.NUM_BITS_KEYS))
-                )
-        );
+        // n + 2^(i-1), wrapping around the 64 bit key space on overflow
+        long start = this.nodeInfo.key + (1L << (this.nextFinger - 1));
+        NodeInfo finger = this.findSuccessorAsync(start).get();
+        NodeInfo previous = fingerTable.getAndSet(this.nextFinger, finger);
+
+        if (previous == null || previous.key != finger.key) {
+            this.ringChanged();
+        }
+    }
+
+    private static NodeInfo toNodeInfo(SimpleNodeInfo info) throws IOException, NoSuchAlgorithmException {
+        if (info instanceof NullSimpleNodeInfo || info.address == null) {
+            return new NullNodeInfo();
+        }
+        return new NodeInfo(info);
+    }
+
+    /**
+     * Replaces the whole finger table with the result of a FingerRefresh
+     */
+    private void refreshFingers() throws InterruptedException {
+        List<NodeInfo> known = new ArrayList<>(this.successorList);
+        for (int finger = 1; finger <= Chord.NUM_BITS_KEYS; finger++) {
+            NodeInfo node = this.fingerTable.get(finger);
+            if (node != null) known.add(node);
+        }
+
+        FingerRefresh refresh = new FingerRefresh(this, known);
+        NodeInfo[] fingers = refresh.run();
+        this.lastFingerRefreshRounds = refresh.getRounds();
+
+        boolean changed = false;
+        for (int finger = 1; finger <= Chord.NUM_BITS_KEYS; finger++) {
+            if (fingers[finger] == null) continue;
+
+            NodeInfo previous = this.fingerTable.getAndSet(finger, fingers[finger]);
+            changed |= previous == null || previous.key != fingers[finger].key;
+        }
+
+        if (changed) {
+            this.ringChanged();
+        }
+    }
+
+    /**
+     * Answers every key of another node's batch lookup with its successor, if this node knows it, or with the closest
+     * node before it that this node knows
+     *
+     * @param request - batch to answer
+     */
+    public void handleLookupBatch(LookupBatchMessage request) throws IOException, NoSuchAlgorithmException {
+        List<LookupAnswer> answers = new ArrayList<>(request.getKeys().size());
+
+        for (BigInteger key : request.getKeys()) {
+            NodeInfo successor = this.localSuccessor(key.longValue());
+
+            if (successor != null) {
+                answers.add(new LookupAnswer(key, new SimpleNodeInfo(successor), this.rangeStartOf(successor), new NullSimpleNodeInfo()));
+            } else {
+                answers.add(new LookupAnswer(key, new NullSimpleNodeInfo(), BigInteger.ZERO, new SimpleNodeInfo(this.closestPrecedingNode(key.longValue()))));
+            }
+        }
+
+        this.communicator.reply(request.getResponseSocketInfo(), request, new LookupBatchReplyMessage(answers));
+    }
+
+    private PredecessorMessage sendHeartbeat(NodeInfo node) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+
+        HeartbeatMessage msg = new HeartbeatMessage(new SimpleNodeInfo(this.nodeInfo));
+
+        return (PredecessorMessage) this.communicator.request(node, msg).get();
+    }
+
+    /**
+     * Takes the heartbeat as a notification from a potential predecessor, and as proof that the sender is alive when it
+     * is the predecessor. Answers with this node's view of its neighbours
+     *
+     * @param request - heartbeat to answer
+     */
+    public void handleHeartbeat(HeartbeatMessage request) throws IOException, NoSuchAlgorithmException {
+        this.handlePredecessorNotification(request.getSender());
+
+        NodeInfo predecessor = this.predecessor;
+        if (predecessor != null && predecessor.port == request.getSender().port && predecessor.address.equals(request.getSender().address)) {
+            this.lastPredecessorHeartbeat = System.nanoTime();
+        }
+
+        this.communicator.reply(request.getSender(), request, this.neighboursView());
     }
 
-    private NodeInfo requestPredecessor(NodeInfo node) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        //ServerSocket tempSocket = new ServerSocket(0);
-        SSLServerSocket tempSocket = Network.createServerSocket(0);
-        tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
+    /**
+     * Starts this node's routing state from its new successor's, which is close to what it should be, since both nodes
+     * are next to each other on the ring. Without it, lookups go through the successor alone until fixFingers has gone
+     * through the whole table. Every finger is still checked by fixFingers afterwards, and neighbours by stabilize
+     *
+     * @param successor - successor this node was just assigned
+     */
+    private void copyFingerTable(NodeInfo successor) throws IOException, NoSuchAlgorithmException, InterruptedException {
+        FingerTableMessage view;
+        try {
+            view = (FingerTableMessage) this.communicator.request(successor, new FetchFingerTableMessage(new SimpleNodeInfo(this.nodeInfo))).get();
+        } catch (ExecutionException e) {
+            ConsoleLogger.log(Level.WARNING, "Could not copy the finger table of " + successor.id + ", building it from scratch");
+            return;
+        }
+
+        this.updateSuccessorList(successor, view.getSuccessors());
+
+        // this node joined right before its successor, so the successor's predecessor now precedes this node
+        NodeInfo predecessor = toNodeInfo(view.getNode());
+        if (!(predecessor instanceof NullNodeInfo) && between(this.nodeInfo.key, predecessor.key, successor.key)) {
+            this.setPredecessor(predecessor);
+        }
+
+        List<NodeInfo> known = new ArrayList<>(this.successorList);
+        for (SimpleNodeInfo finger : view.getFingers()) {
+            known.add(new NodeInfo(finger));
+        }
+        if (this.predecessor != null) known.add(this.predecessor);
+
+        // finger 1 is the successor, already set
+        int copied = 0;
+        for (int finger = 2; finger <= Chord.NUM_BITS_KEYS; finger++) {
+            long start = this.nodeInfo.key + (1L << (finger - 1));
+
+            NodeInfo best = null;
+            for (NodeInfo node : known) {
+                if (node.key == this.nodeInfo.key) continue;
+                if (best == null || Long.compareUnsigned(node.key - start, best.key - start) < 0) best = node;
+            }
+
+            if (best != null) {
+                this.fingerTable.set(finger, best);
+                copied++;
+            }
+        }
+
+        ConsoleLogger.log(Level.INFO, "Started with " + copied + " fingers from " + known.size() + " nodes known by " + successor.id);
+    }
+
+    /**
+     * Answers a joining node with this node's neighbours and fingers, to start its own from
+     *
+     * @param request - request to answer
+     */
+    public void handleFingerTableRequest(FetchFingerTableMessage request) throws IOException, NoSuchAlgorithmException {
+        PredecessorMessage neighbours = this.neighboursView();
 
-        FetchPredecessorMessage msg = new FetchPredecessorMessage(new SimpleNodeInfo(this.nodeInfo.address, tempSocket.getLocalPort()));
+        List<SimpleNodeInfo> fingers = new ArrayList<>();
+        for (int finger = 1; finger <= Chord.NUM_BITS_KEYS; finger++) {
+            NodeInfo node = this.fingerTable.get(finger);
+            if (node == null) continue;
 
-        Future<NodeInfo> request = this.communicator.listenOnSocket(tempSocket);
+            SimpleNodeInfo info = new SimpleNodeInfo(node);
+            if (!fingers.contains(info)) fingers.add(info);
+        }
 
-        this.communicator.send(Utils.createClientSocket(node.address, node.port), msg);
+        FingerTableMessage msg = new FingerTableMessage(new SimpleNodeInfo(this.nodeInfo), neighbours.getNode(), neighbours.getSuccessors(), fingers);
+        this.communicator.reply(request.getResponseSocketInfo(), request, msg);
+    }
 
-        return request.get();
+    public void handlePredecessorRequest(FetchPredecessorMessage request) throws IOException, NoSuchAlgorithmException {
+        this.communicator.reply(request.getResponseSocketInfo(), request, this.neighboursView());
     }
 
-    public void handlePredecessorRequest(SimpleNodeInfo responseSocketInfo) throws IOException, NoSuchAlgorithmException {
+    private PredecessorMessage neighboursView() throws IOException, NoSuchAlgorithmException {
         PredecessorMessage msg;
 
+        List<SimpleNodeInfo> successors = new ArrayList<>();
+        for (NodeInfo node : this.successorList) {
+            successors.add(new SimpleNodeInfo(node));
+        }
+
         if (this.predecessor == null) {
-            msg = new PredecessorMessage(new SimpleNodeInfo(this.nodeInfo), new NullNodeInfo());
+            msg = new PredecessorMessage(new SimpleNodeInfo(this.nodeInfo), new NullNodeInfo(), successors);
         } else {
-            msg = new PredecessorMessage(new SimpleNodeInfo(this.nodeInfo), new SimpleNodeInfo(this.predecessor));
+            msg = new PredecessorMessage(new SimpleNodeInfo(this.nodeInfo), new SimpleNodeInfo(this.predecessor), successors);
         }
 
-        SSLSocket targetSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket(responseSocketInfo.address, responseSocketInfo.port);
-
-        this.communicator.send(targetSocket, msg);
-
+        return msg;
     }
 
 
-    public void handleStatusCheck(SimpleNodeInfo responseSocketInfo) throws IOException, NoSuchAlgorithmException {
+    public void handleStatusCheck(StatusCheckMessage request) throws IOException, NoSuchAlgorithmException {
         StatusCheckConfirmMessage msg = new StatusCheckConfirmMessage(new SimpleNodeInfo(this.nodeInfo));
-        this.communicator.send(Utils.createClientSocket(responseSocketInfo.address, responseSocketInfo.port), msg);
+        this.communicator.reply(request.getResponseSocketInfo(), request, msg);
     }
 
     private void startListening() throws IOException, NoSuchAlgorithmException {
-        //ServerSocket s = new ServerSocket(nodeInfo.port);
-        SSLServerSocket serverSocket = Network.createServerSocket(this.nodeInfo.port);
-
-        this.communicator = new Communicator(this, serverSocket);
+        this.communicator = new Communicator(this);
 
         this.communicator.listen();
     }
 
     private void setPredecessor(NodeInfo predecessor) {
+        NodeInfo previous = this.predecessor;
         this.predecessor = predecessor;
+        this.lastPredecessorHeartbeat = 0;
+        this.lookupCache.clear();
+
+        if (previous == null ? predecessor != null : predecessor == null || previous.key != predecessor.key) {
+            this.ringChanged();
+        }
 
         if (predecessor != null) {
             ConsoleLogger.log(SEVERE, "My predecessor is now " + predecessor.id);
@@ -418,47 +1160,113 @@ public class Node implements Chord {
     }
 
     private void bootstrapStabilizer() {
-        this.threadPool.scheduleWithFixedDelay(() -> {
+        this.stabilizer = this.bootstrapSchedule("stabilize", () -> {
             try {
                 stabilize();
             } catch (IOException | InterruptedException | NoSuchAlgorithmException e) {
                 e.printStackTrace();
             }
-        }, 0, STABILIZATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }, STABILIZATION_INTERVAL_MS);
     }
 
     private void bootstrapFixFingers() {
-        this.threadPool.scheduleWithFixedDelay(() -> {
+        this.fingerFixer = this.bootstrapSchedule("fix fingers", () -> {
             try {
                 fixFingers();
             } catch (IOException | InterruptedException | NoSuchAlgorithmException | ExecutionException e) {
                 e.printStackTrace();
             }
-        }, 0, FIX_FINGER_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }, FIX_FINGER_INTERVAL_MS);
+
+        if (FINGER_REFRESH_MODE.equals("batch")) {
+            this.metrics.gauge(this.gaugeName("fix fingers last refresh rounds"), () -> this.lastFingerRefreshRounds);
+        }
     }
 
     private void bootstrapCheckPredecessor() {
-        this.threadPool.scheduleWithFixedDelay(() -> {
+        this.predecessorChecker = this.bootstrapSchedule("check predecessor", () -> {
             try {
                 checkPredecessor();
             } catch (IOException | InterruptedException | NoSuchAlgorithmException | ExecutionException e) {
                 e.printStackTrace();
             }
-        }, 0, CHECK_PREDECESSOR_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }, CHECK_PREDECESSOR_INTERVAL_MS);
+    }
+
+    private AdaptiveSchedule bootstrapSchedule(String name, Runnable task, long minIntervalMs) {
+        AdaptiveSchedule schedule = new AdaptiveSchedule(this.threadPool, task, this.ringVersion::get, minIntervalMs, MAX_MAINTENANCE_INTERVAL_MS);
+
+        this.metrics.gauge(this.gaugeName(name + " interval (ms)"), schedule::getIntervalMs);
+        this.metrics.gauge(this.gaugeName(name + " runs"), schedule::getRuns);
+
+        schedule.start();
+        return schedule;
+    }
+
+    /**
+     * Metrics are shared by the peer's virtual nodes, so the gauges of all but the first are told apart by index
+     */
+    private String gaugeName(String name) {
+        return this.nodeInfo.vnode == 0 ? name : "vnode " + this.nodeInfo.vnode + " " + name;
+    }
+
+    /**
+     * Called when the successor, predecessor or a finger changes, so that maintenance runs at full rate again
+     */
+    private void ringChanged() {
+        this.ringVersion.incrementAndGet();
+
+        for (AdaptiveSchedule schedule : new AdaptiveSchedule[]{this.stabilizer, this.fingerFixer, this.predecessorChecker}) {
+            if (schedule != null) schedule.reset();
+        }
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task. Virtual threads only exist from JDK 21 on,
+     * so it is looked up at runtime and falls back to an unbounded pool of platform threads.
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ConsoleLogger.log(Level.WARNING, "Virtual threads are not available in this JVM, using an unbounded thread pool");
+            return Executors.newCachedThreadPool();
+        }
     }
 
+    /**
+     * @return scheduler for periodic tasks
+     */
     public ScheduledExecutorService getThreadPool() {
         return threadPool;
     }
 
+    /**
+     * @return executor for message handlers and other tasks that block on I/O
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
     public NodeInfo getNodeInfo() {
         return this.nodeInfo;
     }
 
-    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, byte[] fileContent) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, byte[] fileContent) throws IOException, NoSuchAlgorithmException {
         return this.backupManager.requestBackup(replicaId, fileContent);
     }
 
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, Path source) throws IOException, NoSuchAlgorithmException {
+        return this.backupManager.requestBackup(replicaId, source);
+    }
+
+    /**
+     * Places again a replica stored on this peer, reading its content from the replica store
+     */
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException {
+        return this.backupManager.requestBackup(replicaId);
+    }
+
     public void handleBackupRequest(BackupRequestMessage request) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
         this.backupManager.handleBackupRequest(request);
     }
@@ -467,6 +1275,18 @@ public class Node implements Chord {
         this.backupManager.storeReplica(backupPayloadMessage);
     }
 
+    public void handleBackupChunk(BackupChunkMessage chunk) throws IOException, ExecutionException, InterruptedException, NoSuchAlgorithmException {
+        this.backupManager.storeReplicaChunk(chunk);
+    }
+
+    public void handleBackupChainChunk(BackupChainChunkMessage chunk) throws IOException, ExecutionException, InterruptedException, NoSuchAlgorithmException {
+        this.backupManager.storeChainChunk(chunk);
+    }
+
+    public void handleReplicaRange(ReplicaRangeMessage range) throws IOException {
+        this.backupManager.takeOverRange(range);
+    }
+
     public CompletableFuture<NodeInfo> requestRestore(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
         return this.restoreManager.requestRestore(replicaId);
     }
@@ -475,6 +1295,10 @@ public class Node implements Chord {
         this.restoreManager.handleRestoreRequest(message);
     }
 
+    public void handleRestoreChunkRequest(RestoreChunkRequestMessage message) throws IOException, NoSuchAlgorithmException {
+        this.restoreManager.handleRestoreChunkRequest(message);
+    }
+
     public void handleReplicaDeletion(DeleteReplicaMessage deleteReplicaMessage) {
         this.deleteManager.deleteReplica(deleteReplicaMessage);
     }
@@ -499,6 +1323,14 @@ public class Node implements Chord {
         return reclaimManager;
     }
 
+    public DistributedBackupServiceAdapter getDbsAdapter() {
+        return dbsAdapter;
+    }
+
+    public LeaveManager getLeaveManager() {
+        return leaveManager;
+    }
+
     public RestoreManager getRestoreManager() {
         return this.restoreManager;
     }
@@ -507,6 +1339,18 @@ public class Node implements Chord {
         return this.state;
     }
 
+    public ReplicaStore getReplicaStore() {
+        return this.replicaStore;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public LookupCache getLookupCache() {
+        return lookupCache;
+    }
+
     public Communicator getCommunicator() {
         return communicator;
     }
@@ -524,8 +1368,26 @@ public class Node implements Chord {
             successor = successorInfo;
         }
 
+        NodeInfo previous = this.successor;
         this.successor = successor;
-        this.fingerTable.put(1, successor);
+        this.fingerTable.set(1, successor);
+        this.lookupCache.clear();
+
+        if (previous == null || previous.key != successor.key) {
+            this.ringChanged();
+        }
+
+        if (successor.key == this.nodeInfo.key) {
+            this.successorList = List.of(successor);
+        } else {
+            List<NodeInfo> list = new ArrayList<>(SUCCESSOR_LIST_SIZE);
+            list.add(successor);
+            for (NodeInfo known : this.successorList) {
+                if (list.size() >= SUCCESSOR_LIST_SIZE) break;
+                if (known.key != successor.key && known.key != this.nodeInfo.key) list.add(known);
+            }
+            this.successorList = List.copyOf(list);
+        }
 
         ConsoleLogger.log(SEVERE, "My successor is now " + successor.id);
     }
@@ -17,33 +17,54 @@ import java.util.Arrays;
 
 public class NodeInfo {
     public final BigInteger id;
+    // id as an unsigned long, used for routing decisions
+    public final long key;
     public final InetAddress address;
     public final int port;
+    // Ring position of the node among the ones sharing its address and port. 0 for a peer's first node
+    public final int vnode;
     public String accessPoint;
 
     public NodeInfo(InetAddress address, int port) throws NoSuchAlgorithmException {
+        this(address, port, 0);
+    }
+
+    public NodeInfo(InetAddress address, int port, int vnode) throws NoSuchAlgorithmException {
         this.address = address;
         this.port = port;
+        this.vnode = vnode;
 
         if(address == null) {
             this.id = BigInteger.valueOf(-1);
         } else {
-            this.id = generateId(address, port).mod(BigInteger.valueOf(2).pow(Chord.NUM_BITS_KEYS));
+            this.id = generateId(address, port, vnode).mod(BigInteger.valueOf(2).pow(Chord.NUM_BITS_KEYS));
         }
+        this.key = this.id.longValue();
     }
 
     public NodeInfo(SimpleNodeInfo simpleInfo) throws IOException, NoSuchAlgorithmException {
-        this(simpleInfo.address, simpleInfo.port);
+        this(simpleInfo.address, simpleInfo.port, simpleInfo.vnode);
     }
 
-    private static BigInteger generateId(InetAddress address, int port) throws NoSuchAlgorithmException {
-        byte[] rawId = Arrays.copyOf(address.getAddress(), address.getAddress().length + 4);
+    /**
+     * Hashes address and port, followed by the virtual node index for every node of a peer but the first, so the
+     * first keeps the id it had before peers ran several nodes
+     */
+    private static BigInteger generateId(InetAddress address, int port, int vnode) throws NoSuchAlgorithmException {
+        byte[] rawId = Arrays.copyOf(address.getAddress(), address.getAddress().length + (vnode == 0 ? 4 : 8));
 
         rawId[4] = (byte) (port >> 24);
         rawId[5] = (byte) (port >> 16);
         rawId[6] = (byte) (port >> 8);
         rawId[7] = (byte) port;
 
+        if (vnode != 0) {
+            rawId[8] = (byte) (vnode >> 24);
+            rawId[9] = (byte) (vnode >> 16);
+            rawId[10] = (byte) (vnode >> 8);
+            rawId[11] = (byte) vnode;
+        }
+
         return ByteToHash.convert(rawId, "SHA-256");
     }
 
@@ -4,18 +4,55 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
 
 public class SimpleNodeInfo implements Serializable {
     public final InetAddress address;
     public final int port;
+    // Ring position of the node among the ones sharing its address and port
+    public final int vnode;
 
     public SimpleNodeInfo(InetAddress address, int port) throws NoSuchAlgorithmException, IOException {
+        this(address, port, 0);
+    }
+
+    public SimpleNodeInfo(InetAddress address, int port, int vnode) {
         this.address = address;
         this.port = port;
+        this.vnode = vnode;
     }
 
     public SimpleNodeInfo(NodeInfo nodeInfo) throws IOException, NoSuchAlgorithmException {
-        this(nodeInfo.address, nodeInfo.port);
+        this(nodeInfo.address, nodeInfo.port, nodeInfo.vnode);
+    }
+
+    /**
+     * @return the peer this node runs on, which owns the connection its messages travel through
+     */
+    public SimpleNodeInfo peer() {
+        return this.vnode == 0 ? this : new SimpleNodeInfo(this.address, this.port, 0);
+    }
+
+    /**
+     * @return whether both nodes run on the same peer, and so share its storage
+     */
+    public boolean samePeer(SimpleNodeInfo other) {
+        return this.port == other.port && Objects.equals(this.address, other.address);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SimpleNodeInfo)) return false;
+        SimpleNodeInfo that = (SimpleNodeInfo) o;
+        return port == that.port &&
+                vnode == that.vnode &&
+                Objects.equals(address, that.address);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, port, vnode);
     }
 
     @Override
@@ -23,6 +60,7 @@ public class SimpleNodeInfo implements Serializable {
         return "SimpleNodeInfo{" +
                 "address=" + address +
                 ", port=" + port +
+                ", vnode=" + vnode +
                 '}';
     }
 }
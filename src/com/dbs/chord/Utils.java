@@ -10,13 +10,30 @@ import java.net.InetAddress;
 import java.util.logging.Level;
 
 public class Utils {
+    private static final BigInteger KEY_SPACE = BigInteger.ONE.shiftLeft(Chord.NUM_BITS_KEYS);
+
     public static boolean between(BigInteger middle, BigInteger left, BigInteger right) {
-       if(right.compareTo(left) > 0){
-           return middle.compareTo(left) > 0 && middle.compareTo(right) < 0;
-       }else if(right.compareTo(left) < 0){
-           return middle.compareTo(left) > 0 || middle.compareTo(right) < 0;
-       }
-       return false;
+        return between(middle.longValue(), left.longValue(), right.longValue());
+    }
+
+    /**
+     * Same as the BigInteger version, for keys held as unsigned longs.
+     * Measures both points as clockwise distances from left, so the wraparound needs no special case
+     *
+     * @return true if middle is strictly inside the ring interval (left, right)
+     */
+    public static boolean between(long middle, long left, long right) {
+        long distance = middle - left;
+        return distance != 0 && Long.compareUnsigned(distance, right - left) < 0;
+    }
+
+    /**
+     * @param key - key held as an unsigned long
+     * @return the same key as a non negative BigInteger, as carried in messages
+     */
+    public static BigInteger toBigInteger(long key) {
+        BigInteger value = BigInteger.valueOf(key);
+        return key >= 0 ? value : value.add(KEY_SPACE);
     }
 
     public static SSLSocket createClientSocket(InetAddress destAddress, int destPort) throws IOException {
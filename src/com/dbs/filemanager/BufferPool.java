@@ -0,0 +1,56 @@
+package com.dbs.filemanager;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reuses direct buffers of a fixed size, so that reading file regions does not allocate a new buffer each time.
+ * Buffers that are never released are simply garbage collected.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> free;
+    private final AtomicInteger pooled;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.free = new ConcurrentLinkedQueue<>();
+        this.pooled = new AtomicInteger();
+    }
+
+    /**
+     * @param length - number of bytes needed
+     * @return a cleared buffer whose limit is length. Lengths above the pool's buffer size get a buffer of their own
+     */
+    public ByteBuffer acquire(int length) {
+        if (length > this.bufferSize) {
+            return ByteBuffer.allocateDirect(length);
+        }
+
+        ByteBuffer buffer = this.free.poll();
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(this.bufferSize);
+        } else {
+            this.pooled.decrementAndGet();
+        }
+
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != this.bufferSize || !buffer.isDirect()) return;
+
+        if (this.pooled.incrementAndGet() <= this.maxPooled) {
+            this.free.add(buffer);
+        } else {
+            this.pooled.decrementAndGet();
+        }
+    }
+}
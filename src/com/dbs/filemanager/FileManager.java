@@ -142,6 +142,27 @@ public class FileManager {
         return ids;
     }
 
+    /**
+     * Identifiers of the fragments of an erasure coded file. Each fragment is stored as a file of its own, named after
+     * the original file and the fragment's index, with a single replica at its own key.
+     *
+     * @param fileId       - original file
+     * @param numFragments - data and parity fragments
+     * @param fragmentSize - size of each fragment
+     * @return one identifier per fragment
+     */
+    public static ReplicaIdentifier[] generateFragmentIds(FileIdentifier fileId, int numFragments, long fragmentSize) throws IOException, NoSuchAlgorithmException {
+
+        ReplicaIdentifier[] ids = new ReplicaIdentifier[numFragments];
+
+        for (int i = 0; i < numFragments; i++) {
+            FileIdentifier fragmentId = new FileIdentifier(fileId.getFileName() + "#ec" + i, fileId.getCreationTime(), fragmentSize);
+            ids[i] = generateReplicaIds(fragmentId, 1)[0];
+        }
+
+        return ids;
+    }
+
     public static String getFileName(String filePath) {
         File file = new File(filePath);
 
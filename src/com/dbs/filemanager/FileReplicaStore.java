@@ -0,0 +1,81 @@
+package com.dbs.filemanager;
+
+import com.dbs.protocols.backup.FileIdentifier;
+import com.dbs.utils.ConsoleLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Keeps the content of every stored file in a file of its own, named after the hash of its identifier
+ */
+public class FileReplicaStore implements ReplicaStore {
+
+    private final Path directory;
+
+    public FileReplicaStore(Path directory) {
+        this.directory = directory;
+    }
+
+    private Path path(FileIdentifier fileId) {
+        return this.directory.resolve(String.valueOf(fileId.hashCode()));
+    }
+
+    @Override
+    public void write(FileIdentifier fileId, byte[] content) throws IOException {
+        Files.write(this.path(fileId), content);
+    }
+
+    /**
+     * The chunks go to a temporary file next to the final one, which is only renamed into place once completed
+     */
+    @Override
+    public ReplicaWriter create(FileIdentifier fileId, long transferId) throws IOException {
+        Path target = this.path(fileId);
+        Path partial = target.resolveSibling(target.getFileName() + ".part" + transferId);
+        FileChannel channel = FileChannel.open(partial, WRITE, CREATE, TRUNCATE_EXISTING);
+
+        return new ReplicaWriter() {
+            @Override
+            public void write(long offset, byte[] data) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+            }
+
+            @Override
+            public void complete() throws IOException {
+                channel.close();
+                Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            @Override
+            public void abort() {
+                try {
+                    channel.close();
+                    Files.deleteIfExists(partial);
+                } catch (IOException e) {
+                    ConsoleLogger.log(WARNING, "Could not remove partial file " + partial);
+                }
+            }
+        };
+    }
+
+    @Override
+    public ReplicaContent open(FileIdentifier fileId) throws IOException {
+        return ReplicaContent.open(this.path(fileId));
+    }
+
+    @Override
+    public void delete(FileIdentifier fileId) throws IOException {
+        Files.deleteIfExists(this.path(fileId));
+    }
+}
@@ -0,0 +1,253 @@
+package com.dbs.filemanager;
+
+import java.util.Arrays;
+
+/**
+ * Systematic Reed-Solomon code over GF(2^8).
+ * A file is split into dataFragments fragments of equal size, the last one padded with zeros, and parityFragments
+ * more are computed from them. Any dataFragments of the resulting fragments are enough to rebuild the file.
+ */
+public class ReedSolomon {
+
+    // x^8 + x^4 + x^3 + x^2 + 1, with 2 as generator
+    private static final int FIELD_POLYNOMIAL = 0x11d;
+    private static final int FIELD_SIZE = 256;
+
+    private static final int[] EXP = new int[2 * FIELD_SIZE];
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final byte[][] MUL = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= FIELD_SIZE) x ^= FIELD_POLYNOMIAL;
+        }
+        for (int i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+
+        for (int a = 0; a < FIELD_SIZE; a++) {
+            for (int b = 0; b < FIELD_SIZE; b++) {
+                MUL[a][b] = (byte) (a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]]);
+            }
+        }
+    }
+
+    private final int dataFragments;
+    private final int parityFragments;
+
+    // Row i gives fragment i as a combination of the data fragments. The first dataFragments rows are the identity
+    private final byte[][] matrix;
+
+    public ReedSolomon(int dataFragments, int parityFragments) {
+        if (dataFragments < 1 || parityFragments < 0 || dataFragments + parityFragments > FIELD_SIZE) {
+            throw new IllegalArgumentException("Need at least 1 data fragment and at most " + FIELD_SIZE + " fragments in total");
+        }
+
+        this.dataFragments = dataFragments;
+        this.parityFragments = parityFragments;
+        this.matrix = buildMatrix(dataFragments, dataFragments + parityFragments);
+    }
+
+    public int getDataFragments() {
+        return dataFragments;
+    }
+
+    public int getParityFragments() {
+        return parityFragments;
+    }
+
+    public int getTotalFragments() {
+        return dataFragments + parityFragments;
+    }
+
+    /**
+     * @param length - size of the file in bytes
+     * @return size of each fragment of a file of that size
+     */
+    public int fragmentSize(long length) {
+        return (int) Math.max(1, (length + this.dataFragments - 1) / this.dataFragments);
+    }
+
+    /**
+     * @param data - file content
+     * @return getTotalFragments() fragments, data fragments first
+     */
+    public byte[][] encode(byte[] data) {
+        int fragmentSize = this.fragmentSize(data.length);
+        byte[][] fragments = new byte[this.getTotalFragments()][fragmentSize];
+
+        for (int i = 0; i < this.dataFragments; i++) {
+            int start = i * fragmentSize;
+            if (start < data.length) {
+                System.arraycopy(data, start, fragments[i], 0, Math.min(fragmentSize, data.length - start));
+            }
+        }
+
+        for (int p = this.dataFragments; p < this.getTotalFragments(); p++) {
+            combine(this.matrix[p], fragments, fragments[p]);
+        }
+
+        return fragments;
+    }
+
+    /**
+     * Rebuilds the file from the fragments that are available
+     *
+     * @param fragments - all fragments in order, with null for the missing ones
+     * @param length    - size of the original file
+     * @return file content
+     */
+    public byte[] decode(byte[][] fragments, int length) {
+        int fragmentSize = this.fragmentSize(length);
+
+        int[] rows = new int[this.dataFragments];
+        byte[][] available = new byte[this.dataFragments][];
+        int found = 0;
+
+        for (int i = 0; i < fragments.length && found < this.dataFragments; i++) {
+            if (fragments[i] != null) {
+                rows[found] = i;
+                available[found] = fragments[i];
+                found++;
+            }
+        }
+
+        if (found < this.dataFragments) {
+            throw new IllegalArgumentException("Need " + this.dataFragments + " fragments to decode, only have " + found);
+        }
+
+        byte[][] subMatrix = new byte[this.dataFragments][];
+        for (int i = 0; i < this.dataFragments; i++) {
+            subMatrix[i] = this.matrix[rows[i]];
+        }
+        byte[][] decodeMatrix = invert(subMatrix);
+
+        byte[] data = new byte[length];
+        byte[] fragment = new byte[fragmentSize];
+
+        for (int i = 0; i < this.dataFragments; i++) {
+            int start = i * fragmentSize;
+            if (start >= length) break;
+
+            byte[] source;
+            if (fragments[i] != null) {
+                source = fragments[i];
+            } else {
+                Arrays.fill(fragment, (byte) 0);
+                combine(decodeMatrix[i], available, fragment);
+                source = fragment;
+            }
+
+            System.arraycopy(source, 0, data, start, Math.min(fragmentSize, length - start));
+        }
+
+        return data;
+    }
+
+    /**
+     * output ^= sum of coefficients[j] * inputs[j]
+     */
+    private static void combine(byte[] coefficients, byte[][] inputs, byte[] output) {
+        for (int j = 0; j < coefficients.length; j++) {
+            int coefficient = coefficients[j] & 0xff;
+            if (coefficient == 0) continue;
+
+            byte[] table = MUL[coefficient];
+            byte[] input = inputs[j];
+            for (int b = 0; b < output.length; b++) {
+                output[b] ^= table[input[b] & 0xff];
+            }
+        }
+    }
+
+    /**
+     * Vandermonde matrix with rows rows and columns columns, multiplied by the inverse of its top square, so that every
+     * set of columns rows is still invertible and the top square becomes the identity
+     */
+    private static byte[][] buildMatrix(int columns, int rows) {
+        byte[][] vandermonde = new byte[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                vandermonde[r][c] = (byte) power(r, c);
+            }
+        }
+
+        byte[][] top = new byte[columns][];
+        System.arraycopy(vandermonde, 0, top, 0, columns);
+        byte[][] topInverse = invert(top);
+
+        byte[][] result = new byte[rows][columns];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                int value = 0;
+                for (int i = 0; i < columns; i++) {
+                    value ^= MUL[vandermonde[r][i] & 0xff][topInverse[i][c] & 0xff];
+                }
+                result[r][c] = (byte) value;
+            }
+        }
+
+        return result;
+    }
+
+    private static int power(int base, int exponent) {
+        if (exponent == 0) return 1;
+        if (base == 0) return 0;
+
+        return EXP[(LOG[base] * exponent) % (FIELD_SIZE - 1)];
+    }
+
+    /**
+     * Gauss-Jordan elimination over GF(2^8)
+     */
+    private static byte[][] invert(byte[][] square) {
+        int n = square.length;
+        int[][] work = new int[n][2 * n];
+
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                work[r][c] = square[r][c] & 0xff;
+            }
+            work[r][n + r] = 1;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && work[pivot][col] == 0) pivot++;
+            if (pivot == n) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+
+            int[] swap = work[col];
+            work[col] = work[pivot];
+            work[pivot] = swap;
+
+            int inverse = EXP[(FIELD_SIZE - 1) - LOG[work[col][col]]];
+            for (int c = 0; c < 2 * n; c++) {
+                work[col][c] = MUL[work[col][c]][inverse] & 0xff;
+            }
+
+            for (int r = 0; r < n; r++) {
+                int factor = work[r][col];
+                if (r == col || factor == 0) continue;
+
+                for (int c = 0; c < 2 * n; c++) {
+                    work[r][c] ^= MUL[factor][work[col][c]] & 0xff;
+                }
+            }
+        }
+
+        byte[][] result = new byte[n][n];
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                result[r][c] = (byte) work[r][n + c];
+            }
+        }
+
+        return result;
+    }
+}
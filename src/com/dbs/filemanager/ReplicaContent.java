@@ -0,0 +1,79 @@
+package com.dbs.filemanager;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Read only view of the content of one file, which may be a region of a larger file. Reads are positional and
+ * relative to the start of the content, so several threads may read through the same view.
+ */
+public class ReplicaContent implements Closeable {
+
+    private final FileChannel channel;
+    private final long start;
+    private final long size;
+
+    ReplicaContent(FileChannel channel, long start, long size) {
+        this.channel = channel;
+        this.start = start;
+        this.size = size;
+    }
+
+    /**
+     * @return view of the whole file at path
+     */
+    public static ReplicaContent open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, READ);
+        return new ReplicaContent(channel, 0, channel.size());
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Reads into destination from position on, never past the end of the content
+     *
+     * @return number of bytes read, or -1 if position is at or past the end
+     */
+    public int read(ByteBuffer destination, long position) throws IOException {
+        if (position >= this.size) return -1;
+
+        int limit = destination.limit();
+        if (destination.remaining() > this.size - position) {
+            destination.limit(destination.position() + (int) (this.size - position));
+        }
+
+        try {
+            return this.channel.read(destination, this.start + position);
+        } finally {
+            destination.limit(limit);
+        }
+    }
+
+    /**
+     * @return the whole content
+     */
+    public byte[] readAll() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) this.size);
+
+        while (buffer.hasRemaining()) {
+            if (this.read(buffer, buffer.position()) < 0) {
+                throw new EOFException("Stored file is shorter than recorded");
+            }
+        }
+
+        return buffer.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,60 @@
+package com.dbs.filemanager;
+
+import com.dbs.protocols.backup.FileIdentifier;
+
+import java.io.IOException;
+
+/**
+ * Where a node keeps the content of the files it stores replicas of. The replicas of one file share its content, so
+ * content is kept per file, and the state tells which replicas of it are here.
+ */
+public interface ReplicaStore {
+
+    /**
+     * Stores the whole content of a file, replacing any content it had
+     */
+    void write(FileIdentifier fileId, byte[] content) throws IOException;
+
+    /**
+     * Starts receiving the content of a file in chunks, which may arrive in any order. The content only replaces what
+     * the file had once the writer is completed
+     *
+     * @param transferId - tells apart transfers of the same file
+     */
+    ReplicaWriter create(FileIdentifier fileId, long transferId) throws IOException;
+
+    /**
+     * @return view of the content of a stored file, to be closed once read
+     * @throws java.nio.file.NoSuchFileException if the file is not stored here
+     */
+    ReplicaContent open(FileIdentifier fileId) throws IOException;
+
+    /**
+     * Drops the content of a file, if it is stored here
+     */
+    void delete(FileIdentifier fileId) throws IOException;
+
+    /**
+     * @return the whole content of a stored file
+     */
+    default byte[] read(FileIdentifier fileId) throws IOException {
+        try (ReplicaContent content = this.open(fileId)) {
+            return content.readAll();
+        }
+    }
+
+    interface ReplicaWriter {
+
+        void write(long offset, byte[] data) throws IOException;
+
+        /**
+         * Makes the content written so far the content of the file
+         */
+        void complete() throws IOException;
+
+        /**
+         * Drops what was written, leaving the file as it was
+         */
+        void abort();
+    }
+}
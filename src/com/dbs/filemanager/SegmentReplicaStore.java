@@ -0,0 +1,566 @@
+package com.dbs.filemanager;
+
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.FileIdentifier;
+import com.dbs.utils.ConsoleLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.*;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Keeps the content of stored files as records appended to large segment files, instead of one file each, so storing
+ * many small files costs sequential writes instead of creating and deleting files. Where each file's content is lives
+ * in an index held in memory, rebuilt on open by reading the record headers of every segment.
+ * <p>
+ * Space for a record is reserved at the end of the current segment before it is written, so concurrent writers and
+ * chunks arriving out of order each write their own region. A record only counts once its header is marked committed,
+ * which is only written once the content is forced to disk, so a crash never leaves a committed header in front of
+ * content that did not make it. Writers finishing at the same time share one force.
+ * Deleting a file appends a tombstone naming the segment and position of its record, forced to disk before the delete
+ * returns, so reopening the store does not bring it back. Sealed segments whose live records fell below COMPACTION_LIVE_PERCENT of their size are compacted in the
+ * background: their live records and still needed tombstones are copied to the current segment, and the segment is
+ * deleted.
+ */
+public class SegmentReplicaStore implements ReplicaStore {
+
+    // Segments are sealed and a new one started once they reach this size. A larger file gets a segment of its own
+    private static final long SEGMENT_SIZE_BYTES = Long.getLong("dbs.storage.segmentSize", 64L << 20);
+    // A sealed segment is compacted once less than this percentage of it holds live records
+    private static final int COMPACTION_LIVE_PERCENT = Integer.getInteger("dbs.storage.compactionLivePercent", 50);
+    private static final int COMPACTION_CHECK_INTERVAL_MS = Integer.getInteger("dbs.storage.compactionCheckIntervalMs", 10000);
+    private static final int COPY_BUFFER_BYTES = 1 << 20;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final int MAGIC = 0x44425352;
+    private static final byte CONTENT = 1;
+    private static final byte TOMBSTONE = 2;
+    // Magic, type, committed flag, header length, region length and content length, followed by the file identifier
+    private static final int FIXED_HEADER_BYTES = 4 + 1 + 1 + 4 + 8 + 8;
+    // Tombstones hold the number of the segment the deleted record was in and the position of its header there
+    private static final int TOMBSTONE_BYTES = 8 + 8;
+
+    private final Path directory;
+
+    private final ConcurrentHashMap<FileIdentifier, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Segment new records are appended to. Guarded by this, like every change of the index
+    private Segment active;
+
+    private SegmentReplicaStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Reads back the files stored in directory, if any, and starts a new segment after the existing ones
+     *
+     * @param directory - where the segments are kept
+     * @param scheduler - runs the periodic compaction
+     */
+    public static SegmentReplicaStore open(Path directory, ScheduledExecutorService scheduler) throws IOException {
+        SegmentReplicaStore store = new SegmentReplicaStore(directory);
+
+        long start = System.nanoTime();
+        store.recover();
+
+        long next = store.segments.isEmpty() ? 0 : store.segments.lastKey() + 1;
+        store.active = new Segment(next, directory.resolve(SEGMENT_PREFIX + next + SEGMENT_SUFFIX));
+        store.segments.put(next, store.active);
+
+        ConsoleLogger.log(INFO, "Recovered " + store.index.size() + " stored files from " + (store.segments.size() - 1) + " segments in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        scheduler.scheduleWithFixedDelay(store::compactIfDue, COMPACTION_CHECK_INTERVAL_MS, COMPACTION_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        return store;
+    }
+
+    /**
+     * Reads the headers of every segment in order. The last committed record of a file is its content, unless a later
+     * tombstone names that record
+     */
+    private void recover() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        numbers.sort(null);
+
+        for (long number : numbers) {
+            Segment segment = new Segment(number, this.directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX));
+            segment.sealed = true;
+            this.segments.put(number, segment);
+
+            scan(segment.channel, (position, type, committed, headerLength, region, length, fileId) -> {
+                if (type == TOMBSTONE) {
+                    long target = readLong(segment.channel, position + headerLength);
+                    long targetPosition = readLong(segment.channel, position + headerLength + Long.BYTES);
+                    Location current = this.index.get(fileId);
+                    if (current != null && current.segment.number == target && current.position == targetPosition) {
+                        this.index.remove(fileId);
+                        current.segment.live.addAndGet(-current.bytes());
+                    }
+                } else if (committed) {
+                    Location location = new Location(segment, position, headerLength, region, length);
+                    Location previous = this.index.put(fileId, location);
+                    if (previous != null) {
+                        previous.segment.live.addAndGet(-previous.bytes());
+                    }
+                    segment.live.addAndGet(location.bytes());
+                }
+            });
+
+            // a torn tail counts as dead space, so that compaction eventually drops it
+            segment.size = segment.channel.size();
+        }
+    }
+
+    @Override
+    public void write(FileIdentifier fileId, byte[] content) throws IOException {
+        byte[] header = header(CONTENT, false, content.length, content.length, fileId);
+        Location location = this.reserve(header.length, content.length, content.length);
+
+        try {
+            ByteBuffer record = ByteBuffer.allocate(header.length + content.length);
+            record.put(header).put(content).flip();
+            writeFully(location.segment.channel, record, location.position);
+
+            location.segment.forceWrites();
+            writeFully(location.segment.channel, ByteBuffer.wrap(header(CONTENT, true, content.length, content.length, fileId)), location.position);
+
+            this.publish(fileId, location);
+        } finally {
+            this.released(location.segment);
+        }
+    }
+
+    /**
+     * Reserves as much space as the file identifier says the file has, and fails chunks that would go past it
+     */
+    @Override
+    public ReplicaWriter create(FileIdentifier fileId, long transferId) throws IOException {
+        long region = fileId.getFileSize();
+        byte[] header = header(CONTENT, false, region, 0, fileId);
+        Location reserved = this.reserve(header.length, region, 0);
+
+        try {
+            // written first, so that reopening the store can skip the region even if it is never completed
+            writeFully(reserved.segment.channel, ByteBuffer.wrap(header), reserved.position);
+        } catch (IOException e) {
+            this.released(reserved.segment);
+            throw e;
+        }
+
+        return new ReplicaWriter() {
+            private final AtomicLong written = new AtomicLong();
+            private boolean done = false;
+
+            @Override
+            public void write(long offset, byte[] data) throws IOException {
+                if (offset < 0 || offset + data.length > region) {
+                    throw new IOException("Content of " + fileId.getFileName() + " is larger than the " + region + " bytes recorded for it");
+                }
+
+                writeFully(reserved.segment.channel, ByteBuffer.wrap(data), reserved.dataStart() + offset);
+                this.written.accumulateAndGet(offset + data.length, Math::max);
+            }
+
+            @Override
+            public synchronized void complete() throws IOException {
+                if (this.done) return;
+                this.done = true;
+
+                try {
+                    long length = this.written.get();
+                    reserved.segment.forceWrites();
+                    writeFully(reserved.segment.channel, ByteBuffer.wrap(header(CONTENT, true, region, length, fileId)), reserved.position);
+                    publish(fileId, new Location(reserved.segment, reserved.position, reserved.headerLength, region, length));
+                } finally {
+                    released(reserved.segment);
+                }
+            }
+
+            @Override
+            public synchronized void abort() {
+                if (this.done) return;
+                this.done = true;
+
+                // the region stays uncommitted, and goes away with its segment
+                released(reserved.segment);
+            }
+        };
+    }
+
+    @Override
+    public ReplicaContent open(FileIdentifier fileId) throws IOException {
+        while (true) {
+            Location location = this.index.get(fileId);
+            if (location == null) {
+                throw new NoSuchFileException(fileId.getFileName());
+            }
+
+            try {
+                return new ReplicaContent(FileChannel.open(location.segment.path, READ), location.dataStart(), location.length);
+            } catch (NoSuchFileException e) {
+                // the segment was compacted meanwhile, and the content moved to another one
+                if (this.index.get(fileId) == location) throw e;
+            }
+        }
+    }
+
+    @Override
+    public void delete(FileIdentifier fileId) throws IOException {
+        Location removed;
+        Location tombstone;
+        byte[] header = header(TOMBSTONE, true, TOMBSTONE_BYTES, TOMBSTONE_BYTES, fileId);
+
+        synchronized (this) {
+            removed = this.index.remove(fileId);
+            if (removed == null) return;
+
+            removed.segment.live.addAndGet(-removed.bytes());
+            tombstone = this.reserve(header.length, TOMBSTONE_BYTES, TOMBSTONE_BYTES);
+        }
+
+        try {
+            writeTombstone(tombstone, header, removed.segment.number, removed.position);
+            tombstone.segment.forceWrites();
+        } finally {
+            this.released(tombstone.segment);
+        }
+    }
+
+    /**
+     * Takes space for a record at the end of the current segment, starting a new one if the record does not fit. The
+     * segment counts the record as being written until released is called
+     */
+    private synchronized Location reserve(int headerLength, long region, long length) throws IOException {
+        long bytes = headerLength + region;
+
+        if (this.active.size > 0 && this.active.size + bytes > SEGMENT_SIZE_BYTES) {
+            long next = this.active.number + 1;
+            this.active.sealed = true;
+            this.active = new Segment(next, this.directory.resolve(SEGMENT_PREFIX + next + SEGMENT_SUFFIX));
+            this.segments.put(next, this.active);
+        }
+
+        Location location = new Location(this.active, this.active.size, headerLength, region, length);
+        this.active.size += bytes;
+        this.active.writers.incrementAndGet();
+
+        return location;
+    }
+
+    private void released(Segment segment) {
+        segment.writers.decrementAndGet();
+    }
+
+    private synchronized void publish(FileIdentifier fileId, Location location) {
+        Location previous = this.index.put(fileId, location);
+        if (previous != null) {
+            previous.segment.live.addAndGet(-previous.bytes());
+        }
+        location.segment.live.addAndGet(location.bytes());
+    }
+
+    /**
+     * Called periodically. Compacts, oldest first, the sealed segments with no record being written into them and
+     * few live records left
+     */
+    private void compactIfDue() {
+        for (Segment segment : this.segments.values()) {
+            if (!segment.sealed || segment.writers.get() > 0) continue;
+            if (segment.size > 0 && segment.live.get() * 100 >= (long) COMPACTION_LIVE_PERCENT * segment.size) continue;
+
+            try {
+                this.compact(segment);
+            } catch (IOException e) {
+                ConsoleLogger.log(WARNING, "Could not compact segment " + segment.number + ": " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Copies the live records of a segment, and the tombstones of records in segments that still exist, to the
+     * current segment, forces the copies to disk, then deletes the segment
+     */
+    private void compact(Segment segment) throws IOException {
+        Set<Segment> written = new HashSet<>();
+        AtomicInteger moved = new AtomicInteger();
+        long live = segment.live.get();
+
+        scan(segment.channel, (position, type, committed, headerLength, region, length, fileId) -> {
+            if (type == TOMBSTONE) {
+                long target = readLong(segment.channel, position + headerLength);
+                if (target != segment.number && this.segments.containsKey(target)) {
+                    written.add(this.copyTombstone(fileId, target, readLong(segment.channel, position + headerLength + Long.BYTES)));
+                }
+            } else if (committed) {
+                Location location = this.index.get(fileId);
+                if (location != null && location.segment == segment && location.position == position) {
+                    written.add(this.move(fileId, location));
+                    moved.incrementAndGet();
+                }
+            }
+        });
+
+        for (Segment copies : written) {
+            copies.channel.force(false);
+        }
+
+        this.segments.remove(segment.number);
+        segment.channel.close();
+        Files.deleteIfExists(segment.path);
+
+        ConsoleLogger.log(INFO, "Compacted segment " + segment.number + ", moved " + moved.get() + " files and freed "
+                + (segment.size - live) + " bytes");
+    }
+
+    /**
+     * Copies the record of a file to the current segment. The copy is only committed if the file was not deleted or
+     * written again meanwhile
+     *
+     * @return segment the copy went to
+     */
+    private Segment move(FileIdentifier fileId, Location from) throws IOException {
+        byte[] header = header(CONTENT, false, from.length, 0, fileId);
+        Location to = this.reserve(header.length, from.length, from.length);
+
+        try {
+            writeFully(to.segment.channel, ByteBuffer.wrap(header), to.position);
+            copy(from.segment.channel, from.dataStart(), to.segment.channel, to.dataStart(), from.length);
+            to.segment.forceWrites();
+
+            synchronized (this) {
+                if (this.index.get(fileId) != from) {
+                    return to.segment;
+                }
+
+                writeFully(to.segment.channel, ByteBuffer.wrap(header(CONTENT, true, from.length, from.length, fileId)), to.position);
+                this.index.put(fileId, to);
+                from.segment.live.addAndGet(-from.bytes());
+                to.segment.live.addAndGet(to.bytes());
+            }
+
+            return to.segment;
+        } finally {
+            this.released(to.segment);
+        }
+    }
+
+    private Segment copyTombstone(FileIdentifier fileId, long target, long targetPosition) throws IOException {
+        byte[] header = header(TOMBSTONE, true, TOMBSTONE_BYTES, TOMBSTONE_BYTES, fileId);
+        Location tombstone = this.reserve(header.length, TOMBSTONE_BYTES, TOMBSTONE_BYTES);
+
+        try {
+            writeTombstone(tombstone, header, target, targetPosition);
+        } finally {
+            this.released(tombstone.segment);
+        }
+
+        return tombstone.segment;
+    }
+
+    private static void writeTombstone(Location tombstone, byte[] header, long target, long targetPosition) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(header.length + TOMBSTONE_BYTES);
+        record.put(header).putLong(target).putLong(targetPosition).flip();
+        writeFully(tombstone.segment.channel, record, tombstone.position);
+    }
+
+    private static byte[] header(byte type, boolean committed, long region, long length, FileIdentifier fileId) throws IOException {
+        ByteArrayOutputStream identifier = new ByteArrayOutputStream();
+        Wire.writeFileId(new DataOutputStream(identifier), fileId);
+
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + identifier.size());
+        header.putInt(MAGIC)
+                .put(type)
+                .put((byte) (committed ? 1 : 0))
+                .putInt(FIXED_HEADER_BYTES + identifier.size())
+                .putLong(region)
+                .putLong(length)
+                .put(identifier.toByteArray());
+
+        return header.array();
+    }
+
+    private interface RecordVisitor {
+        void visit(long position, byte type, boolean committed, int headerLength, long region, long length, FileIdentifier fileId) throws IOException;
+    }
+
+    /**
+     * Goes through the records of a segment in order, stopping at the first header that is torn or whose region goes
+     * past the end of the segment
+     */
+    private static void scan(FileChannel channel, RecordVisitor visitor) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_BYTES);
+
+        while (position + FIXED_HEADER_BYTES <= size) {
+            fixed.clear();
+            readFully(channel, fixed, position);
+            fixed.flip();
+
+            if (fixed.getInt() != MAGIC) break;
+
+            byte type = fixed.get();
+            boolean committed = fixed.get() == 1;
+            int headerLength = fixed.getInt();
+            long region = fixed.getLong();
+            long length = fixed.getLong();
+
+            if (headerLength < FIXED_HEADER_BYTES || region < 0 || length < 0 || length > region || position + headerLength + region > size) break;
+
+            ByteBuffer identifier = ByteBuffer.allocate(headerLength - FIXED_HEADER_BYTES);
+            readFully(channel, identifier, position + FIXED_HEADER_BYTES);
+
+            FileIdentifier fileId;
+            try {
+                fileId = Wire.readFileId(new DataInputStream(new ByteArrayInputStream(identifier.array())));
+            } catch (IOException e) {
+                break;
+            }
+
+            visitor.visit(position, type, committed, headerLength, region, length, fileId);
+
+            position += headerLength + region;
+        }
+    }
+
+    private static long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        readFully(channel, buffer, position);
+        return buffer.flip().getLong();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new EOFException("Segment ended inside a record");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    private static void copy(FileChannel from, long fromPosition, FileChannel to, long toPosition, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(COPY_BUFFER_BYTES, Math.max(length, 1)));
+
+        for (long copied = 0; copied < length; ) {
+            buffer.clear();
+            if (buffer.remaining() > length - copied) {
+                buffer.limit((int) (length - copied));
+            }
+
+            readFully(from, buffer, fromPosition + copied);
+            buffer.flip();
+
+            int bytes = buffer.remaining();
+            writeFully(to, buffer, toPosition + copied);
+            copied += bytes;
+        }
+    }
+
+    private static class Segment {
+
+        private final long number;
+        private final Path path;
+        private final FileChannel channel;
+
+        // Bytes taken by records, reserved or written. Guarded by the store
+        private volatile long size = 0;
+        // Bytes taken by the records the index points to
+        private final AtomicLong live = new AtomicLong();
+        // Records reserved and not yet completed or aborted
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile boolean sealed = false;
+
+        // Writes finished, and how many of them a force is known to cover
+        private final AtomicLong finishedWrites = new AtomicLong();
+        private long forcedWrites = 0;
+        private final Object forceLock = new Object();
+
+        Segment(long number, Path path) throws IOException {
+            this.number = number;
+            this.path = path;
+            this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+        }
+
+        /**
+         * Returns once every write to the segment finished before the call is on disk. Only one force runs at a time,
+         * and the writers that queue behind it find their writes covered by the next one
+         */
+        void forceWrites() throws IOException {
+            long write = this.finishedWrites.incrementAndGet();
+
+            synchronized (this.forceLock) {
+                if (this.forcedWrites >= write) return;
+
+                long upTo = this.finishedWrites.get();
+                this.channel.force(false);
+                this.forcedWrites = upTo;
+            }
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        // Start of the record's header
+        private final long position;
+        private final int headerLength;
+        private final long region;
+        private final long length;
+
+        Location(Segment segment, long position, int headerLength, long region, long length) {
+            this.segment = segment;
+            this.position = position;
+            this.headerLength = headerLength;
+            this.region = region;
+            this.length = length;
+        }
+
+        long dataStart() {
+            return this.position + this.headerLength;
+        }
+
+        long bytes() {
+            return this.headerLength + this.region;
+        }
+    }
+}
@@ -6,116 +6,211 @@ import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.network.messages.*;
 import com.dbs.utils.ConsoleLogger;
 
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLSocket;
 import java.io.*;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
+import static com.dbs.chord.Node.REQUEST_TIMEOUT_MS;
+
 public class Communicator {
 
 
-    private SSLServerSocket serverSocket = null;
+    // "socket" for blocking SSLSockets with one thread per connection, "nio" for the selector based transport
+    private static final String TRANSPORT = System.getProperty("dbs.transport", "socket");
+
     private Node node;
+    // Nodes of this peer by virtual node index. The first one is node, which owns the listener. Positions that failed
+    // to join are null, so the ones after them keep their index
+    private final CopyOnWriteArrayList<Node> vnodes;
+    private Transport transport;
 
+    private final ConcurrentHashMap<Long, CompletableFuture<ChordMessage>> pendingRequests;
+    private final AtomicLong nextRequestId;
 
 
-    public Communicator(Node n, SSLServerSocket s) {
+
+    public Communicator(Node n) {
         this.node = n;
-        this.serverSocket = s;
+        this.vnodes = new CopyOnWriteArrayList<>(List.of(n));
+        this.pendingRequests = new ConcurrentHashMap<>();
+        this.nextRequestId = new AtomicLong();
+
+        if (TRANSPORT.equals("nio")) {
+            this.transport = new NioTransport(this);
+        } else {
+            this.transport = new SocketTransport(this, n.getThreadPool(), n.getExecutor());
+        }
     }
 
-    public void listen() {
-        node.getThreadPool().submit(() -> {
-            while(true){
-                SSLSocket s = (SSLSocket) serverSocket.accept();
-
-                node.getThreadPool().submit(() -> {
-                    try {
-                        ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
-                        ObjectInputStream in = new ObjectInputStream(s.getInputStream());
-                        Object o = in.readObject();
-                        MessageHandler.handle(o, node);
-
-                    } catch (SocketException e) {
-                        ConsoleLogger.log(Level.WARNING, "Socket was closed unexpectedly");
-                    } catch (IOException | ClassNotFoundException | InterruptedException | ExecutionException | NoSuchAlgorithmException e) {
-                        e.printStackTrace();
-                    }
+    public void listen() throws IOException, NoSuchAlgorithmException {
+        this.transport.listen(this.node.getNodeInfo().port);
+    }
 
-                    try {
-                        s.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
-            }
-        });
+    /**
+     * Makes this peer's listener deliver messages for the virtual node to it
+     *
+     * @param vnode - node sharing this communicator, whose NodeInfo.vnode is the next index
+     */
+    public void register(Node vnode) {
+        this.vnodes.add(vnode);
+    }
+
+    /**
+     * Stops delivering messages to a virtual node that failed to join. Its index stays taken
+     */
+    public void unregister(Node vnode) {
+        this.vnodes.set(vnode.getNodeInfo().vnode, null);
     }
 
-    public Future<NodeInfo> listenOnSocket(SSLServerSocket tempSocket){
-        return node.getThreadPool().submit(() -> {
-            SSLSocket s;
-            NodeInfo nodeInfo = new NullNodeInfo();
-            s = (SSLSocket) tempSocket.accept();
+    /**
+     * Replies resolve the request waiting for them. Any other message is handled by the node's executor, on the
+     * virtual node it was sent to. Replies are completed on the executor too, as this runs on a transport thread that
+     * must not run the stages waiting for them, which may block on a send that only that thread can drain
+     *
+     * @param msg - received message
+     */
+    void deliver(ChordMessage msg) {
+        this.node.getMetrics().messageReceived(msg.getType());
+
+        if (msg.isReply()) {
+            CompletableFuture<ChordMessage> request = this.pendingRequests.remove(msg.getRequestId());
+
+            if (request != null) {
+                request.completeAsync(() -> msg, this.node.getExecutor());
+            } else {
+                ConsoleLogger.log(Level.FINE, "Dropped reply to unknown or expired request " + msg.getRequestId());
+            }
+            return;
+        }
 
-            ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
-            ObjectInputStream in = new ObjectInputStream(s.getInputStream());
-            Object o = in.readObject();
-            NodeInfoMessage msg = (NodeInfoMessage) ChordMessage.fromObject(o);
+        Node target = msg.getVnode() < this.vnodes.size() ? this.vnodes.get(msg.getVnode()) : null;
+        if (target == null) {
+            ConsoleLogger.log(Level.WARNING, "Dropped " + msg.getType() + " for unknown virtual node " + msg.getVnode());
+            return;
+        }
 
-            if(!(msg.getNode() instanceof NullSimpleNodeInfo)){
-                nodeInfo = new NodeInfo(msg.getNode());
+        node.getExecutor().submit(() -> {
+            try {
+                MessageHandler.handle(msg, target);
+            } catch (IOException | InterruptedException | ExecutionException | NoSuchAlgorithmException e) {
+                e.printStackTrace();
             }
+        });
+    }
 
-            msg.handle(node);
+    /**
+     * Sends a message tagged with a new request id and returns a future for the reply carrying the same id.
+     * The reply arrives at this node's main listener. If it does not arrive within REQUEST_TIMEOUT_MS,
+     * the future completes exceptionally with a TimeoutException.
+     *
+     * @param target - node to send the request to
+     * @param msg    - request message
+     * @return future resolved with the reply
+     */
+    public CompletableFuture<ChordMessage> request(SimpleNodeInfo target, ChordMessage msg) {
+        long requestId = this.nextRequestId.incrementAndGet();
+        msg.setRequestId(requestId);
+
+        CompletableFuture<ChordMessage> request = new CompletableFuture<>();
+        this.pendingRequests.put(requestId, request);
+
+        request.orTimeout(REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .whenComplete((response, e) -> {
+                    this.pendingRequests.remove(requestId);
+
+                    // the target is unreachable, so stop sending it the keys it was responsible for
+                    if (e != null) {
+                        this.node.getLookupCache().invalidate(target);
+                    }
+                });
 
-            s.close();
+        try {
+            this.send(target, msg);
+        } catch (IOException e) {
+            request.completeExceptionally(e);
+        }
 
-            return nodeInfo;
-        });
+        return request;
     }
 
-    public CompletableFuture<ChordMessage> async_listenOnSocket(SSLServerSocket tempSocket) {
-        return CompletableFuture.supplyAsync(()->{
-            SSLSocket s;
-            try {
-                s = (SSLSocket) tempSocket.accept();
-
-                ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
-                ObjectInputStream in = new ObjectInputStream(s.getInputStream());
-                Object o = in.readObject();
-                return ChordMessage.fromObject(o);
-            } catch (SocketTimeoutException e) {
-                return new NotFoundMessage();
-            } catch (ClassNotFoundException | IOException e) {
-                e.printStackTrace();
-            }
+    public CompletableFuture<ChordMessage> request(NodeInfo target, ChordMessage msg) throws IOException, NoSuchAlgorithmException {
+        return this.request(new SimpleNodeInfo(target), msg);
+    }
 
-            return new ChordMessage(ChordMessage.MESSAGE_TYPE.BACKUP_NACK) {
-                @Override
-                public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+    /**
+     * Same as request, for requests answered with a NodeInfoMessage. Resolves with the node in the reply,
+     * or NullNodeInfo if the reply carries no node.
+     *
+     * @param target - node to send the request to
+     * @param msg    - request message
+     * @return future resolved with the node in the reply
+     */
+    public CompletableFuture<NodeInfo> requestNode(NodeInfo target, ChordMessage msg) throws IOException, NoSuchAlgorithmException {
+        return this.request(target, msg).thenApply(response -> {
+            try {
+                SimpleNodeInfo node = ((NodeInfoMessage) response).getNode();
 
+                if (node instanceof NullSimpleNodeInfo) {
+                    return new NullNodeInfo();
                 }
-            };
+                return new NodeInfo(node);
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
 
+    /**
+     * Answers a request received from another node, tagging the response with the request's id
+     *
+     * @param target   - node waiting for the response
+     * @param request  - message being answered
+     * @param response - response message
+     */
+    public void reply(SimpleNodeInfo target, ChordMessage request, ChordMessage response) throws IOException {
+        response.setRequestId(request.getRequestId());
+        response.setReply(true);
+
+        this.send(target, response);
+    }
 
-        });
+    /**
+     * Sends a message to another node's listener, reusing the open connection to that node's peer
+     *
+     * @param target - node to send the message to
+     * @param msg    - message to send
+     */
+    public void send(SimpleNodeInfo target, ChordMessage msg) throws IOException {
+        this.node.getMetrics().messageSent(msg.getType());
+        msg.setVnode(target.vnode);
+        this.transport.send(target.peer(), msg);
     }
 
-    public void send(SSLSocket targetSocket, ChordMessage msg) throws IOException{
-        ObjectOutputStream out = new ObjectOutputStream(targetSocket.getOutputStream());
-        ObjectInputStream in = new ObjectInputStream(targetSocket.getInputStream());
+    public void send(NodeInfo target, ChordMessage msg) throws IOException, NoSuchAlgorithmException {
+        this.send(new SimpleNodeInfo(target), msg);
+    }
 
-        out.writeObject(msg);
-        targetSocket.close();
+    /**
+     * @return the nodes of this peer that joined the ring
+     */
+    public List<Node> getVirtualNodes() {
+        List<Node> joined = new ArrayList<>(this.vnodes.size());
+        for (Node vnode : this.vnodes) {
+            if (vnode != null) joined.add(vnode);
+        }
+        return joined;
+    }
 
+    public Transport getTransport() {
+        return transport;
     }
 }
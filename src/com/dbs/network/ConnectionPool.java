@@ -0,0 +1,260 @@
+package com.dbs.network;
+
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.chord.Utils;
+import com.dbs.network.codec.MessageCodec;
+import com.dbs.network.messages.ChordMessage;
+import com.dbs.utils.ConsoleLogger;
+
+import javax.net.ssl.SSLSocket;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Keeps one long-lived TLS connection per peer, so that consecutive messages to the same node
+ * reuse the same handshake instead of opening a new socket each time.
+ * Messages are written as length-prefixed frames from the configured MessageCodec, or as objects on a
+ * Java serialization stream when the codec is "java", and the listener on the other side keeps reading
+ * until the connection is closed.
+ */
+public class ConnectionPool {
+
+    public static final int IDLE_TIMEOUT_MS = 30000;
+    private static final int HEALTH_CHECK_INTERVAL_MS = 5000;
+    private static final int HEALTH_CHECK_READ_TIMEOUT_MS = 1;
+    private static final int BODY_TRANSFER_BYTES = 64 * 1024;
+
+    private final ConcurrentHashMap<SimpleNodeInfo, PooledConnection> connections;
+    private final MessageCodec codec;
+
+    public ConnectionPool(ScheduledExecutorService scheduler) {
+        this.connections = new ConcurrentHashMap<>();
+        this.codec = MessageCodec.configured();
+
+        scheduler.scheduleWithFixedDelay(this::checkConnections, HEALTH_CHECK_INTERVAL_MS, HEALTH_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a message through the pooled connection to target, opening it if needed.
+     * A pooled connection found stale before writing is replaced, but once part of the message may have been written
+     * the failure is passed on, since sending it again could deliver it twice.
+     *
+     * @param target - node to send the message to
+     * @param msg    - message to send
+     */
+    public void send(SimpleNodeInfo target, ChordMessage msg) throws IOException {
+        try {
+            PooledConnection connection = this.acquire(target);
+
+            try {
+                connection.write(msg);
+            } catch (IOException e) {
+                this.evict(target, connection);
+                throw e;
+            }
+        } finally {
+            msg.releaseBody();
+        }
+    }
+
+    /**
+     * Closes the connection to target, if any. The next message to target opens a new one.
+     *
+     * @param target - node whose connection should be dropped
+     */
+    public void evict(SimpleNodeInfo target) {
+        PooledConnection connection = this.connections.remove(target);
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    public int size() {
+        return this.connections.size();
+    }
+
+    private PooledConnection acquire(SimpleNodeInfo target) throws IOException {
+        PooledConnection connection = this.connections.get(target);
+
+        if (connection != null && connection.isUsable()) {
+            return connection;
+        }
+
+        synchronized (this.connections) {
+            connection = this.connections.get(target);
+            if (connection != null && connection.isUsable()) {
+                return connection;
+            }
+
+            if (connection != null) {
+                this.connections.remove(target, connection);
+                connection.close();
+            }
+
+            connection = new PooledConnection(Utils.createClientSocket(target.address, target.port), this.codec);
+            this.connections.put(target, connection);
+
+            return connection;
+        }
+    }
+
+    private void evict(SimpleNodeInfo target, PooledConnection connection) {
+        if (this.connections.remove(target, connection)) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Called periodically. Closes connections that have been idle for too long or whose peer has gone away.
+     */
+    private void checkConnections() {
+        long now = System.currentTimeMillis();
+
+        this.connections.forEach((target, connection) -> {
+            if (now - connection.getLastUsed() > IDLE_TIMEOUT_MS) {
+                ConsoleLogger.log(Level.FINE, "Closing idle connection to " + target);
+                this.evict(target, connection);
+            } else if (!connection.isHealthy()) {
+                ConsoleLogger.log(Level.WARNING, "Dropping broken connection to " + target);
+                this.evict(target, connection);
+            }
+        });
+    }
+
+    private static class PooledConnection {
+
+        private final SSLSocket socket;
+        private final MessageCodec codec;
+        private ObjectOutputStream objectOut;
+        private DataOutputStream frameOut;
+        private byte[] bodyTransfer;
+        private volatile long lastUsed;
+        private volatile boolean broken = false;
+
+        PooledConnection(SSLSocket socket, MessageCodec codec) {
+            this.socket = socket;
+            this.codec = codec;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        synchronized void write(ChordMessage msg) throws IOException {
+            try {
+                if (MessageCodec.usesJavaSerialization()) {
+                    this.writeObject(msg);
+                } else {
+                    this.writeFrame(msg);
+                }
+
+                this.lastUsed = System.currentTimeMillis();
+            } catch (IOException e) {
+                this.broken = true;
+                throw e;
+            }
+        }
+
+        private void writeFrame(ChordMessage msg) throws IOException {
+            if (this.frameOut == null) {
+                this.frameOut = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+            }
+
+            byte[] payload = this.codec.encode(msg);
+            ByteBuffer body = this.codec.framesBody() ? msg.getBody() : null;
+
+            this.frameOut.writeInt(payload.length + (body == null ? 0 : body.remaining()));
+            this.frameOut.write(payload);
+            if (body != null) {
+                this.writeBody(body.duplicate());
+            }
+            this.frameOut.flush();
+        }
+
+        /**
+         * Streams can only take byte arrays, so direct buffers go through one reusable array per connection
+         */
+        private void writeBody(ByteBuffer body) throws IOException {
+            if (body.hasArray()) {
+                this.frameOut.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+                return;
+            }
+
+            if (this.bodyTransfer == null) {
+                this.bodyTransfer = new byte[BODY_TRANSFER_BYTES];
+            }
+
+            while (body.hasRemaining()) {
+                int length = Math.min(body.remaining(), this.bodyTransfer.length);
+                body.get(this.bodyTransfer, 0, length);
+                this.frameOut.write(this.bodyTransfer, 0, length);
+            }
+        }
+
+        private void writeObject(ChordMessage msg) throws IOException {
+            if (this.objectOut == null) {
+                this.objectOut = new ObjectOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+            }
+
+            this.objectOut.writeObject(msg);
+            this.objectOut.flush();
+            // Stops the stream from keeping references to every object ever sent on this connection
+            this.objectOut.reset();
+        }
+
+        /**
+         * The remote end never writes anything other than the stream header, so a read that reaches
+         * the end of the stream means the peer closed the connection.
+         */
+        synchronized boolean isHealthy() {
+            if (!this.isOpen()) return false;
+
+            try {
+                this.socket.setSoTimeout(HEALTH_CHECK_READ_TIMEOUT_MS);
+                InputStream in = this.socket.getInputStream();
+                byte[] discard = new byte[64];
+
+                while (true) {
+                    if (in.read(discard) < 0) return false;
+                }
+            } catch (SocketTimeoutException e) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * A connection left idle since the last health check may have been closed by the peer in the meantime,
+         * so it is checked again before being reused
+         */
+        boolean isUsable() {
+            if (!this.isOpen()) return false;
+
+            return System.currentTimeMillis() - this.lastUsed < HEALTH_CHECK_INTERVAL_MS || this.isHealthy();
+        }
+
+        boolean isOpen() {
+            return !this.broken && !this.socket.isClosed() && this.socket.isConnected() && !this.socket.isOutputShutdown();
+        }
+
+        long getLastUsed() {
+            return this.lastUsed;
+        }
+
+        synchronized void close() {
+            this.broken = true;
+            try {
+                this.socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package com.dbs.network;
+
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.MessageCodec;
+import com.dbs.network.messages.ChordMessage;
+import com.dbs.utils.ConsoleLogger;
+import com.dbs.utils.Network;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.*;
+
+/**
+ * Non-blocking transport on java.nio channels. A fixed number of selector threads drive every connection,
+ * doing TLS through an SSLEngine, so the number of open connections does not depend on the number of threads.
+ * Each message travels as a frame: a 4 byte length followed by the message as encoded by the configured MessageCodec.
+ * Nodes in a ring must all use the same transport.
+ */
+public class NioTransport implements Transport {
+
+    private static final int SELECTOR_THREADS = Integer.getInteger("dbs.nio.selectors", 2);
+    // Bytes of frames a connection may have queued and not yet written before senders have to wait for it to drain
+    private static final long MAX_QUEUED_BYTES = Long.getLong("dbs.nio.maxQueuedBytes", 64L << 20);
+    // How long a sender waits for room in a full queue before the send fails
+    private static final int QUEUE_WAIT_MS = Integer.getInteger("dbs.nio.queueWaitMs", 5000);
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+    private static final int SELECT_TIMEOUT_MS = 1000;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final Communicator communicator;
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop;
+    private final ConcurrentHashMap<SimpleNodeInfo, Connection> connections;
+    private final MessageCodec codec;
+
+    public NioTransport(Communicator communicator) {
+        this.communicator = communicator;
+        this.codec = MessageCodec.configured();
+        this.loops = new SelectorLoop[SELECTOR_THREADS];
+        this.nextLoop = new AtomicInteger();
+        this.connections = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void listen(int port) throws IOException, NoSuchAlgorithmException {
+        for (int i = 0; i < this.loops.length; i++) {
+            this.loops[i] = new SelectorLoop();
+            Thread thread = new Thread(this.loops[i], "nio-selector-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+
+        this.loops[0].execute(() -> {
+            try {
+                serverChannel.register(this.loops[0].selector, SelectionKey.OP_ACCEPT, (Handler) key -> this.accept(serverChannel));
+            } catch (ClosedChannelException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Queues the message on the connection to target, opening it if needed. The message is written by
+     * the connection's selector thread, so a failure to reach target shows up as a request timeout.
+     * If the connection already has MAX_QUEUED_BYTES waiting to be written, this waits for it to drain, and fails
+     * once QUEUE_WAIT_MS pass or the connection is closed.
+     *
+     * @param target - node to send the message to
+     * @param msg    - message to send
+     */
+    @Override
+    public void send(SimpleNodeInfo target, ChordMessage msg) throws IOException {
+        OutgoingFrame frame = encode(msg);
+
+        Connection connection = this.connections.get(target);
+        if (connection == null || connection.closed) {
+            try {
+                connection = this.connect(target);
+            } catch (IOException e) {
+                msg.releaseBody();
+                throw e;
+            }
+        }
+
+        connection.enqueue(frame);
+    }
+
+    @Override
+    public int connectionCount() {
+        return this.connections.size();
+    }
+
+    private Connection connect(SimpleNodeInfo target) throws IOException {
+        synchronized (this.connections) {
+            Connection connection = this.connections.get(target);
+            if (connection != null && !connection.closed) {
+                return connection;
+            }
+
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.connect(new InetSocketAddress(target.address, target.port));
+
+            try {
+                SSLEngine engine = Network.createSSLEngine(true, target.address.getHostAddress(), target.port);
+                connection = new Connection(this.nextLoop(), channel, engine, target);
+            } catch (NoSuchAlgorithmException e) {
+                channel.close();
+                throw new IOException(e);
+            }
+
+            this.connections.put(target, connection);
+            connection.register(SelectionKey.OP_CONNECT);
+
+            return connection;
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+
+            try {
+                SSLEngine engine = Network.createSSLEngine(false, null, 0);
+                engine.beginHandshake();
+                new Connection(this.nextLoop(), channel, engine, null).register(SelectionKey.OP_READ);
+            } catch (NoSuchAlgorithmException e) {
+                channel.close();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private SelectorLoop nextLoop() {
+        return this.loops[Math.floorMod(this.nextLoop.getAndIncrement(), this.loops.length)];
+    }
+
+    private OutgoingFrame encode(ChordMessage msg) throws IOException {
+        byte[] payload = this.codec.encode(msg);
+        ByteBuffer body = this.codec.framesBody() ? msg.getBody() : null;
+
+        ByteBuffer header = ByteBuffer.allocate(4 + payload.length);
+        header.putInt(payload.length + (body == null ? 0 : body.remaining()));
+        header.put(payload);
+        header.flip();
+
+        // The body is handed to the SSLEngine as is, so direct buffers are encrypted without an intermediate copy
+        ByteBuffer[] buffers = body == null ? new ByteBuffer[]{header} : new ByteBuffer[]{header, body.duplicate()};
+
+        return new OutgoingFrame(buffers, msg);
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private interface Handler {
+        void handle(SelectionKey key) throws IOException;
+    }
+
+    private static class OutgoingFrame {
+
+        private final ByteBuffer[] buffers;
+        private final ChordMessage msg;
+        private final long bytes;
+
+        OutgoingFrame(ByteBuffer[] buffers, ChordMessage msg) {
+            this.buffers = buffers;
+            this.msg = msg;
+
+            long bytes = 0;
+            for (ByteBuffer buffer : buffers) {
+                bytes += buffer.remaining();
+            }
+            this.bytes = bytes;
+        }
+
+        boolean isWritten() {
+            return !this.buffers[this.buffers.length - 1].hasRemaining();
+        }
+    }
+
+    /**
+     * One selector and the thread running it. Other threads only touch its channels through execute
+     */
+    private class SelectorLoop implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Runnable> tasks;
+
+        SelectorLoop() throws IOException {
+            this.selector = Selector.open();
+            this.tasks = new ConcurrentLinkedQueue<>();
+        }
+
+        void execute(Runnable task) {
+            this.tasks.add(task);
+            this.selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastSweep = System.currentTimeMillis();
+
+            while (true) {
+                try {
+                    this.selector.select(SELECT_TIMEOUT_MS);
+
+                    Runnable task;
+                    while ((task = this.tasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        Handler handler = (Handler) key.attachment();
+                        try {
+                            if (key.isValid()) handler.handle(key);
+                        } catch (IOException | CancelledKeyException e) {
+                            if (handler instanceof Connection) ((Connection) handler).close();
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastSweep > SELECT_TIMEOUT_MS) {
+                        lastSweep = now;
+                        this.closeIdle(now);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        /**
+         * Outgoing connections are closed after ConnectionPool.IDLE_TIMEOUT_MS without traffic,
+         * accepted ones only after twice that, so the side that opened a connection is the one closing it.
+         */
+        private void closeIdle(long now) {
+            for (SelectionKey key : this.selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    long timeout = connection.target != null ? ConnectionPool.IDLE_TIMEOUT_MS : 2 * ConnectionPool.IDLE_TIMEOUT_MS;
+
+                    if (now - connection.lastActivity > timeout) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A TLS connection driven by its selector thread. Outgoing frames are queued by any thread and
+     * encrypted and written by the selector thread, incoming bytes are decrypted and split into frames.
+     */
+    private class Connection implements Handler {
+
+        private final SelectorLoop loop;
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        // null for accepted connections
+        private final SimpleNodeInfo target;
+
+        private final ConcurrentLinkedQueue<OutgoingFrame> outgoing;
+        // bytes of the frames queued and not yet written, guarded by outgoing
+        private long queuedBytes = 0;
+        private OutgoingFrame currentFrame;
+
+        private ByteBuffer netIn;
+        private ByteBuffer netOut;
+        private ByteBuffer appIn;
+
+        private SelectionKey key;
+        private volatile long lastActivity;
+        private volatile boolean closed = false;
+
+        Connection(SelectorLoop loop, SocketChannel channel, SSLEngine engine, SimpleNodeInfo target) {
+            this.loop = loop;
+            this.channel = channel;
+            this.engine = engine;
+            this.target = target;
+            this.outgoing = new ConcurrentLinkedQueue<>();
+
+            int packetSize = engine.getSession().getPacketBufferSize();
+            this.netIn = ByteBuffer.allocate(packetSize);
+            this.netOut = ByteBuffer.allocate(packetSize);
+            this.appIn = ByteBuffer.allocate(engine.getSession().getApplicationBufferSize());
+
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        void register(int ops) {
+            this.loop.execute(() -> {
+                try {
+                    this.key = this.channel.register(this.loop.selector, ops, this);
+
+                    if (ops == SelectionKey.OP_CONNECT && this.channel.isConnected()) {
+                        this.onConnected();
+                    }
+                } catch (IOException e) {
+                    this.close();
+                }
+            });
+        }
+
+        /**
+         * A frame larger than MAX_QUEUED_BYTES is still accepted once the queue is empty
+         */
+        void enqueue(OutgoingFrame frame) throws IOException {
+            synchronized (this.outgoing) {
+                long deadline = System.currentTimeMillis() + QUEUE_WAIT_MS;
+
+                while (!this.closed && this.queuedBytes > 0 && this.queuedBytes + frame.bytes > MAX_QUEUED_BYTES) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        frame.msg.releaseBody();
+                        throw new IOException("Send queue to " + this.target + " is full");
+                    }
+
+                    try {
+                        this.outgoing.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        frame.msg.releaseBody();
+                        throw new InterruptedIOException("Interrupted waiting for the send queue to " + this.target);
+                    }
+                }
+
+                this.queuedBytes += frame.bytes;
+                this.outgoing.add(frame);
+            }
+
+            // close may have drained the queue before the frame was added. Whichever of the two takes it releases it
+            if (this.closed) {
+                if (this.outgoing.remove(frame)) {
+                    frame.msg.releaseBody();
+                }
+                throw new IOException("Connection to " + this.target + " is closed");
+            }
+
+            this.loop.execute(() -> {
+                try {
+                    if (this.key != null && !this.channel.isConnectionPending()) this.flush();
+                } catch (IOException e) {
+                    this.close();
+                }
+            });
+        }
+
+        @Override
+        public void handle(SelectionKey key) throws IOException {
+            if (key.isConnectable()) {
+                if (this.channel.finishConnect()) {
+                    this.onConnected();
+                }
+                return;
+            }
+
+            if (key.isReadable()) {
+                this.read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                this.flush();
+            }
+        }
+
+        private void onConnected() throws IOException {
+            this.key.interestOps(SelectionKey.OP_READ);
+            this.engine.beginHandshake();
+            this.flush();
+        }
+
+        private void read() throws IOException {
+            int n = this.channel.read(this.netIn);
+
+            if (n < 0) {
+                this.close();
+                return;
+            }
+
+            this.lastActivity = System.currentTimeMillis();
+
+            this.netIn.flip();
+            try {
+                while (this.netIn.hasRemaining()) {
+                    SSLEngineResult result = this.engine.unwrap(this.netIn, this.appIn);
+
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        this.appIn = grow(this.appIn, this.appIn.position() + this.engine.getSession().getApplicationBufferSize());
+                        continue;
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        if (this.netIn.limit() == this.netIn.capacity()) {
+                            this.netIn.compact();
+                            this.netIn = grow(this.netIn, this.engine.getSession().getPacketBufferSize() * 2);
+                            this.netIn.flip();
+                        }
+                        break;
+                    }
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        this.close();
+                        return;
+                    }
+
+                    this.runDelegatedTasks();
+
+                    if (this.engine.getHandshakeStatus() == NEED_WRAP) {
+                        this.flush();
+                    }
+
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0 && this.engine.getHandshakeStatus() != NEED_UNWRAP) {
+                        break;
+                    }
+                }
+            } finally {
+                this.netIn.compact();
+            }
+
+            this.readFrames();
+            this.flush();
+        }
+
+        private void readFrames() throws IOException {
+            this.appIn.flip();
+
+            while (this.appIn.remaining() >= 4) {
+                int length = this.appIn.getInt(this.appIn.position());
+
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+
+                if (this.appIn.remaining() < 4 + length) {
+                    if (this.appIn.capacity() < 4 + length) {
+                        this.appIn.compact();
+                        this.appIn = grow(this.appIn, 4 + length);
+                        this.appIn.flip();
+                    }
+                    break;
+                }
+
+                this.appIn.getInt();
+                byte[] frame = new byte[length];
+                this.appIn.get(frame);
+
+                try {
+                    communicator.deliver(MessageCodec.decodeAny(frame));
+                } catch (IOException e) {
+                    ConsoleLogger.log(Level.WARNING, "Dropped unreadable message: " + e.getMessage());
+                }
+            }
+
+            this.appIn.compact();
+        }
+
+        /**
+         * Writes pending TLS records and encrypts queued frames until the channel stops accepting data,
+         * in which case the rest is written when it becomes writable again
+         */
+        private void flush() throws IOException {
+            while (true) {
+                if (this.netOut.position() > 0) {
+                    this.netOut.flip();
+                    this.channel.write(this.netOut);
+                    boolean pending = this.netOut.hasRemaining();
+                    this.netOut.compact();
+
+                    if (pending) {
+                        this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    this.lastActivity = System.currentTimeMillis();
+                }
+
+                SSLEngineResult.HandshakeStatus status = this.engine.getHandshakeStatus();
+                ByteBuffer[] source;
+
+                if (status == NEED_TASK) {
+                    this.runDelegatedTasks();
+                    continue;
+                } else if (status == NEED_WRAP) {
+                    source = new ByteBuffer[]{EMPTY};
+                } else if (status == NEED_UNWRAP) {
+                    break;
+                } else {
+                    if (this.currentFrame == null) {
+                        this.currentFrame = this.outgoing.poll();
+                    }
+                    if (this.currentFrame == null) {
+                        break;
+                    }
+                    source = this.currentFrame.buffers;
+                }
+
+                SSLEngineResult result = this.engine.wrap(source, this.netOut);
+
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    this.netOut = grow(this.netOut, this.netOut.position() + this.engine.getSession().getPacketBufferSize());
+                    continue;
+                }
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    this.close();
+                    return;
+                }
+
+                if (this.currentFrame != null && this.currentFrame.isWritten()) {
+                    this.currentFrame.msg.releaseBody();
+                    this.written(this.currentFrame);
+                    this.currentFrame = null;
+                }
+            }
+
+            this.key.interestOps(SelectionKey.OP_READ);
+        }
+
+        private void written(OutgoingFrame frame) {
+            synchronized (this.outgoing) {
+                this.queuedBytes -= frame.bytes;
+                this.outgoing.notifyAll();
+            }
+        }
+
+        private void runDelegatedTasks() {
+            Runnable task;
+            while ((task = this.engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        }
+
+        void close() {
+            if (this.closed) return;
+            this.closed = true;
+
+            if (this.target != null) {
+                connections.remove(this.target, this);
+            }
+
+            if (this.currentFrame != null) {
+                this.currentFrame.msg.releaseBody();
+            }
+            OutgoingFrame frame;
+            while ((frame = this.outgoing.poll()) != null) {
+                frame.msg.releaseBody();
+            }
+            // wakes up the senders waiting for room, which then find the connection closed
+            synchronized (this.outgoing) {
+                this.outgoing.notifyAll();
+            }
+
+            try {
+                this.engine.closeOutbound();
+                this.engine.closeInbound();
+            } catch (SSLException e) {
+                // peer closed without close_notify
+            }
+
+            try {
+                if (this.key != null) this.key.cancel();
+                this.channel.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
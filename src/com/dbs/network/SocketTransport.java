@@ -0,0 +1,138 @@
+package com.dbs.network;
+
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.MessageCodec;
+import com.dbs.network.messages.ChordMessage;
+import com.dbs.utils.ConsoleLogger;
+import com.dbs.utils.Network;
+
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+
+/**
+ * Blocking transport over SSLSockets. Outgoing messages go through a ConnectionPool,
+ * and each accepted connection is read by one thread until the peer closes it.
+ */
+public class SocketTransport implements Transport {
+
+    private static final int MAX_FRAME_BYTES = 256 * 1024 * 1024;
+
+    private final Communicator communicator;
+    private final ExecutorService executor;
+    private final ConnectionPool connectionPool;
+
+    private SSLServerSocket serverSocket;
+
+    public SocketTransport(Communicator communicator, ScheduledExecutorService scheduler, ExecutorService executor) {
+        this.communicator = communicator;
+        this.executor = executor;
+        this.connectionPool = new ConnectionPool(scheduler);
+    }
+
+    @Override
+    public void listen(int port) throws IOException, NoSuchAlgorithmException {
+        this.serverSocket = Network.createServerSocket(port);
+
+        this.executor.submit(() -> {
+            while(true){
+                SSLSocket s = (SSLSocket) serverSocket.accept();
+
+                this.executor.submit(() -> this.readMessages(s));
+            }
+        });
+    }
+
+    @Override
+    public void send(SimpleNodeInfo target, ChordMessage msg) throws IOException {
+        this.connectionPool.send(target, msg);
+    }
+
+    @Override
+    public int connectionCount() {
+        return this.connectionPool.size();
+    }
+
+    /**
+     * Reads messages from an accepted connection until the other side closes it.
+     * Peers keep their connections open in a ConnectionPool, so a single socket may carry many messages.
+     * A connection either carries a Java serialization stream, from nodes using the "java" codec or older nodes,
+     * or length-prefixed frames, told apart by the stream's first two bytes.
+     *
+     * @param s - accepted socket
+     */
+    private void readMessages(SSLSocket s) {
+        try {
+            // The peer closes idle connections first, so this only fires if it went away without closing
+            s.setSoTimeout(2 * ConnectionPool.IDLE_TIMEOUT_MS);
+
+            // Older nodes wait for the stream header before they send anything
+            ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());
+            out.flush();
+
+            BufferedInputStream in = new BufferedInputStream(s.getInputStream());
+
+            if (isObjectStream(in)) {
+                this.readObjects(new ObjectInputStream(in));
+            } else {
+                this.readFrames(new DataInputStream(in));
+            }
+
+        } catch (EOFException | SocketTimeoutException e) {
+            // connection closed by peer or left idle
+        } catch (SocketException e) {
+            ConsoleLogger.log(Level.WARNING, "Socket was closed unexpectedly");
+        } catch (IOException | ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+
+        try {
+            s.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void readObjects(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        while (true) {
+            this.communicator.deliver(ChordMessage.fromObject(in.readObject()));
+        }
+    }
+
+    private void readFrames(DataInputStream in) throws IOException {
+        while (true) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_FRAME_BYTES) {
+                throw new IOException("Invalid frame length " + length);
+            }
+
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+
+            this.communicator.deliver(MessageCodec.decodeAny(payload));
+        }
+    }
+
+    private static boolean isObjectStream(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+
+        if (first < 0 || second < 0) {
+            throw new EOFException();
+        }
+
+        return ((first << 8) | second) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF);
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+}
@@ -0,0 +1,33 @@
+package com.dbs.network;
+
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.messages.ChordMessage;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Moves ChordMessages between nodes. Received messages are handed to Communicator.deliver
+ */
+public interface Transport {
+
+    /**
+     * Starts accepting connections from other nodes on the given port
+     *
+     * @param port - port to listen on
+     */
+    void listen(int port) throws IOException, NoSuchAlgorithmException;
+
+    /**
+     * Sends a message to another node's listener
+     *
+     * @param target - node to send the message to
+     * @param msg    - message to send
+     */
+    void send(SimpleNodeInfo target, ChordMessage msg) throws IOException;
+
+    /**
+     * @return number of open outgoing connections
+     */
+    int connectionCount();
+}
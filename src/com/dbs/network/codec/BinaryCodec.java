@@ -0,0 +1,172 @@
+package com.dbs.network.codec;
+
+import com.dbs.network.messages.*;
+
+import java.io.*;
+
+/**
+ * Hand-written binary encoding of ChordMessages.
+ * Layout: MAGIC, VERSION, type tag (MESSAGE_TYPE ordinal), request id, flags, target virtual node, then the
+ * message's own fields as written by ChordMessage.encode.
+ * Version 1 frames, from before peers took several ring positions, have no target virtual node and no index after
+ * each node. They are still read, and written for every message that only involves virtual node 0, so peers running
+ * a single position keep understanding each other across the upgrade.
+ */
+public class BinaryCodec implements MessageCodec {
+
+    public static final byte MAGIC = (byte) 0xDB;
+    public static final byte VERSION = 2;
+    public static final byte V1 = 1;
+
+    private static final int FLAG_REPLY = 1;
+
+    private static final ChordMessage.MESSAGE_TYPE[] TYPES = ChordMessage.MESSAGE_TYPE.values();
+
+    @Override
+    public byte[] encode(ChordMessage msg) throws IOException {
+        if (msg.getVnode() == 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            Wire.V1OutputStream out = new Wire.V1OutputStream(bytes);
+
+            writeHeader(out, msg, V1);
+            msg.encode(out);
+            out.flush();
+
+            if (!out.needsVnodes()) {
+                return bytes.toByteArray();
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        writeHeader(out, msg, VERSION);
+        out.writeByte(msg.getVnode());
+
+        msg.encode(out);
+        out.flush();
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeHeader(DataOutputStream out, ChordMessage msg, byte version) throws IOException {
+        out.writeByte(MAGIC);
+        out.writeByte(version);
+        out.writeByte(msg.getType().ordinal());
+        out.writeLong(msg.getRequestId());
+        out.writeByte(msg.isReply() ? FLAG_REPLY : 0);
+    }
+
+    @Override
+    public boolean framesBody() {
+        return true;
+    }
+
+    @Override
+    public ChordMessage decode(byte[] payload) throws IOException {
+        if (payload.length < 2 || payload[0] != MAGIC) {
+            throw new IOException("Not a binary encoded message");
+        }
+
+        byte version = payload[1];
+        if (version != VERSION && version != V1) {
+            throw new IOException("Unsupported message version " + version);
+        }
+
+        ByteArrayInputStream bytes = new ByteArrayInputStream(payload, 2, payload.length - 2);
+        DataInputStream in = version == V1 ? new Wire.V1InputStream(bytes) : new DataInputStream(bytes);
+
+        int tag = in.readUnsignedByte();
+        if (tag >= TYPES.length) {
+            throw new IOException("Unknown message type " + tag);
+        }
+
+        long requestId = in.readLong();
+        int flags = in.readUnsignedByte();
+        int vnode = version == V1 ? 0 : in.readUnsignedByte();
+
+        ChordMessage msg = decodeBody(TYPES[tag], in);
+        msg.setRequestId(requestId);
+        msg.setReply((flags & FLAG_REPLY) != 0);
+        msg.setVnode(vnode);
+
+        return msg;
+    }
+
+    private static ChordMessage decodeBody(ChordMessage.MESSAGE_TYPE type, DataInputStream in) throws IOException {
+        switch (type) {
+            case FETCH_PREDECESSOR:
+                return FetchPredecessorMessage.decode(in);
+            case FIND_SUCCESSOR:
+                return FindSuccessorMessage.decode(in);
+            case SUCCESSOR:
+                return SuccessorMessage.decode(in);
+            case PREDECESSOR:
+                return PredecessorMessage.decode(in);
+            case NOTIFY_SUCCESSOR:
+                return NotifySuccessorMessage.decode(in);
+            case STATUS_CHECK:
+                return StatusCheckMessage.decode(in);
+            case STATUS_CHECK_CONFIRM:
+                return StatusCheckConfirmMessage.decode(in);
+            case BACKUP_REQUEST:
+                return BackupRequestMessage.decode(in);
+            case BACKUP_CONFIRM:
+                return BackupConfirmMessage.decode(in);
+            case BACKUP_ACK:
+                return BackupACKMessage.decode(in);
+            case BACKUP_NACK:
+                return BackupNACKMessage.decode(in);
+            case BACKUP_PAYLOAD:
+                return BackupPayloadMessage.decode(in);
+            case RESTORE_REQUEST:
+                return RestoreRequestMessage.decode(in);
+            case RESTORE_PAYLOAD:
+                return RestorePayloadMessage.decode(in);
+            case DELETE:
+                return DeleteReplicaMessage.decode(in);
+            case DELETE_CONFIRM:
+                return DeleteConfirmationMessage.decode(in);
+            case NOT_FOUND:
+                return new NotFoundMessage();
+            case UPDATE_REPLICA_LOCATION:
+                return UpdateReplicaLocationMessage.decode(in);
+            case BACKUP_CHUNK:
+                return BackupChunkMessage.decode(in);
+            case BACKUP_CHUNK_ACK:
+                return BackupChunkACKMessage.decode(in);
+            case RESTORE_CHUNK_REQUEST:
+                return RestoreChunkRequestMessage.decode(in);
+            case RESTORE_CHUNK:
+                return RestoreChunkMessage.decode(in);
+            case BACKUP_CHAIN_CHUNK:
+                return BackupChainChunkMessage.decode(in);
+            case BACKUP_CHAIN_RESULT:
+                return BackupChainResultMessage.decode(in);
+            case LOOKUP_STEP:
+                return LookupStepMessage.decode(in);
+            case LOOKUP_STEP_REPLY:
+                return LookupStepReplyMessage.decode(in);
+            case HEARTBEAT:
+                return HeartbeatMessage.decode(in);
+            case LOOKUP_BATCH:
+                return LookupBatchMessage.decode(in);
+            case LOOKUP_BATCH_REPLY:
+                return LookupBatchReplyMessage.decode(in);
+            case FIND_SUCCESSORS:
+                return FindSuccessorsMessage.decode(in);
+            case SUCCESSORS:
+                return SuccessorsMessage.decode(in);
+            case FETCH_FINGER_TABLE:
+                return FetchFingerTableMessage.decode(in);
+            case FINGER_TABLE:
+                return FingerTableMessage.decode(in);
+            case LEAVE:
+                return LeaveMessage.decode(in);
+            case REPLICA_RANGE:
+                return ReplicaRangeMessage.decode(in);
+            default:
+                throw new IOException("No decoder for message type " + type);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.dbs.network.codec;
+
+import com.dbs.network.messages.ChordMessage;
+
+import java.io.*;
+
+/**
+ * Encodes messages with Java serialization, the format used by nodes without the binary codec
+ */
+public class JavaSerializationCodec implements MessageCodec {
+
+    @Override
+    public byte[] encode(ChordMessage msg) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(msg);
+        out.close();
+
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public ChordMessage decode(byte[] payload) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(payload));
+
+        try {
+            return ChordMessage.fromObject(in.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable message", e);
+        }
+    }
+}
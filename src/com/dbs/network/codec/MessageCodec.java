@@ -0,0 +1,50 @@
+package com.dbs.network.codec;
+
+import com.dbs.network.messages.ChordMessage;
+
+import java.io.IOException;
+
+/**
+ * Turns a ChordMessage into the bytes of one frame and back
+ */
+public interface MessageCodec {
+
+    /**
+     * "binary" for BinaryCodec. "java" keeps Java serialization, for rings that still have nodes which only understand it
+     */
+    String CONFIGURED = System.getProperty("dbs.codec", "binary");
+
+    byte[] encode(ChordMessage msg) throws IOException;
+
+    ChordMessage decode(byte[] payload) throws IOException;
+
+    /**
+     * @return true if the transport has to write ChordMessage.getBody() after the bytes returned by encode
+     */
+    default boolean framesBody() {
+        return false;
+    }
+
+    static MessageCodec configured() {
+        return usesJavaSerialization() ? new JavaSerializationCodec() : new BinaryCodec();
+    }
+
+    static boolean usesJavaSerialization() {
+        return CONFIGURED.equals("java");
+    }
+
+    /**
+     * Decodes a payload written by either codec. Java serialization streams always start with 0xACED,
+     * binary ones with BinaryCodec.MAGIC
+     *
+     * @param payload - bytes of one frame
+     * @return decoded message
+     */
+    static ChordMessage decodeAny(byte[] payload) throws IOException {
+        if (payload.length > 0 && payload[0] == BinaryCodec.MAGIC) {
+            return new BinaryCodec().decode(payload);
+        }
+
+        return new JavaSerializationCodec().decode(payload);
+    }
+}
@@ -0,0 +1,251 @@
+package com.dbs.network.codec;
+
+import com.dbs.chord.LookupAnswer;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.NullSimpleNodeInfo;
+import com.dbs.protocols.backup.ChainHop;
+import com.dbs.protocols.backup.FileIdentifier;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Readers and writers for the fields shared by the binary encodings of ChordMessages
+ */
+public class Wire {
+
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    // Fewest bytes each field is written with, which bounds how many of them the rest of a frame can hold
+    public static final int KEY_BYTES = 8;
+    public static final int MIN_NODE_BYTES = 1;
+    public static final int MIN_REPLICA_ID_BYTES = 2 + 2 + 8 + KEY_BYTES;
+
+    /**
+     * Stream of a version 1 frame, whose nodes carry no virtual node index. Notes whether a node that needs one was
+     * written, in which case the message has to be sent as a later version instead
+     */
+    static class V1OutputStream extends DataOutputStream {
+
+        private boolean needsVnodes = false;
+
+        V1OutputStream(OutputStream out) {
+            super(out);
+        }
+
+        boolean needsVnodes() {
+            return this.needsVnodes;
+        }
+    }
+
+    /**
+     * Stream of a version 1 frame, whose nodes are all read as virtual node 0
+     */
+    static class V1InputStream extends DataInputStream {
+
+        V1InputStream(InputStream in) {
+            super(in);
+        }
+    }
+
+    /**
+     * Keys live in [0, 2^Chord.NUM_BITS_KEYS[, so they always fit in 64 bits, read back as unsigned
+     */
+    public static void writeKey(DataOutputStream out, BigInteger key) throws IOException {
+        out.writeLong(key.longValue());
+    }
+
+    public static BigInteger readKey(DataInputStream in) throws IOException {
+        long key = in.readLong();
+
+        return key >= 0 ? BigInteger.valueOf(key) : BigInteger.valueOf(key).add(TWO_TO_64);
+    }
+
+    /**
+     * NullSimpleNodeInfo is written as an empty address
+     */
+    public static void writeNode(DataOutputStream out, SimpleNodeInfo node) throws IOException {
+        if (node == null || node.address == null) {
+            out.writeByte(0);
+            return;
+        }
+
+        byte[] address = node.address.getAddress();
+        out.writeByte(address.length);
+        out.write(address);
+        out.writeInt(node.port);
+
+        if (out instanceof V1OutputStream) {
+            if (node.vnode != 0) ((V1OutputStream) out).needsVnodes = true;
+        } else {
+            out.writeByte(node.vnode);
+        }
+    }
+
+    public static SimpleNodeInfo readNode(DataInputStream in) throws IOException {
+        int length = in.readUnsignedByte();
+
+        try {
+            if (length == 0) {
+                return new NullSimpleNodeInfo();
+            }
+
+            byte[] address = new byte[length];
+            in.readFully(address);
+
+            int port = in.readInt();
+
+            int vnode = in instanceof V1InputStream ? 0 : in.readUnsignedByte();
+
+            return new SimpleNodeInfo(InetAddress.getByAddress(address), port, vnode);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static void writeFileId(DataOutputStream out, FileIdentifier fileId) throws IOException {
+        out.writeUTF(fileId.getFileName());
+        out.writeUTF(fileId.getCreationTime());
+        out.writeLong(fileId.getFileSize());
+    }
+
+    public static FileIdentifier readFileId(DataInputStream in) throws IOException {
+        return new FileIdentifier(in.readUTF(), in.readUTF(), in.readLong());
+    }
+
+    public static void writeReplicaId(DataOutputStream out, ReplicaIdentifier replicaId) throws IOException {
+        writeFileId(out, replicaId.getFileId());
+        writeKey(out, replicaId.getHash());
+    }
+
+    public static ReplicaIdentifier readReplicaId(DataInputStream in) throws IOException {
+        return new ReplicaIdentifier(readFileId(in), readKey(in));
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Invalid length " + length + " with " + in.available() + " bytes left in the frame");
+        }
+
+        byte[] data = new byte[length];
+        in.readFully(data);
+
+        return data;
+    }
+
+    /**
+     * Reads the number of items that follow, each written with at least minBytes, and checks that the rest of the
+     * frame can hold them, so a corrupt count fails instead of allocating room for items that are not there.
+     * Messages are decoded from a frame held in memory, so what the stream has available is what is left of it
+     */
+    public static int readCount(DataInputStream in, int minBytes) throws IOException {
+        int count = in.readInt();
+
+        if (count < 0 || (long) count * minBytes > in.available()) {
+            throw new IOException("Invalid count " + count + " with " + in.available() + " bytes left in the frame");
+        }
+
+        return count;
+    }
+
+    public static void writeNodes(DataOutputStream out, List<SimpleNodeInfo> nodes) throws IOException {
+        out.writeInt(nodes.size());
+
+        for (SimpleNodeInfo node : nodes) {
+            writeNode(out, node);
+        }
+    }
+
+    public static List<SimpleNodeInfo> readNodes(DataInputStream in) throws IOException {
+        int count = readCount(in, MIN_NODE_BYTES);
+        List<SimpleNodeInfo> nodes = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            nodes.add(readNode(in));
+        }
+
+        return nodes;
+    }
+
+    public static void writeAnswers(DataOutputStream out, List<LookupAnswer> answers) throws IOException {
+        out.writeInt(answers.size());
+
+        for (LookupAnswer answer : answers) {
+            writeKey(out, answer.getKey());
+            writeNode(out, answer.getSuccessor());
+            writeKey(out, answer.getRangeStart());
+            writeNode(out, answer.getNext());
+        }
+    }
+
+    public static List<LookupAnswer> readAnswers(DataInputStream in) throws IOException {
+        int count = readCount(in, 2 * (KEY_BYTES + MIN_NODE_BYTES));
+        List<LookupAnswer> answers = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            BigInteger key = readKey(in);
+            SimpleNodeInfo successor = readNode(in);
+            BigInteger rangeStart = readKey(in);
+            SimpleNodeInfo next = readNode(in);
+
+            answers.add(new LookupAnswer(key, successor, rangeStart, next));
+        }
+
+        return answers;
+    }
+
+    public static void writeHops(DataOutputStream out, List<ChainHop> hops) throws IOException {
+        out.writeInt(hops.size());
+
+        for (ChainHop hop : hops) {
+            writeNode(out, hop.getNode());
+            out.writeInt(hop.getReplicaIds().size());
+            for (ReplicaIdentifier replicaId : hop.getReplicaIds()) {
+                writeReplicaId(out, replicaId);
+            }
+        }
+    }
+
+    public static List<ChainHop> readHops(DataInputStream in) throws IOException {
+        int count = readCount(in, MIN_NODE_BYTES + 4);
+        List<ChainHop> hops = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            SimpleNodeInfo node = readNode(in);
+
+            int replicaCount = readCount(in, MIN_REPLICA_ID_BYTES);
+            List<ReplicaIdentifier> replicaIds = new ArrayList<>(replicaCount);
+            for (int j = 0; j < replicaCount; j++) {
+                replicaIds.add(readReplicaId(in));
+            }
+
+            hops.add(new ChainHop(node, replicaIds));
+        }
+
+        return hops;
+    }
+}
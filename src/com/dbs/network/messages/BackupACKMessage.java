@@ -2,9 +2,17 @@ package com.dbs.network.messages;
 
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.IOException;
 
 public class BackupACKMessage extends BackupResponseMessage {
     public BackupACKMessage(SimpleNodeInfo node, ReplicaIdentifier fileId) {
         super(MESSAGE_TYPE.BACKUP_ACK, node, fileId);
     }
+
+    public static BackupACKMessage decode(DataInputStream in) throws IOException {
+        return new BackupACKMessage(Wire.readNode(in), Wire.readReplicaId(in));
+    }
 }
@@ -0,0 +1,87 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ChainHop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Chunk of a file being replicated along a chain. The first hop is the receiver, which stores the chunk and passes it
+ * on to the next hop with the rest of the chain. Chunks are acknowledged with a BackupChunkACKMessage once the rest
+ * of the chain acknowledged them too, and the last one is answered with a BackupChainResultMessage.
+ */
+public class BackupChainChunkMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final long transferId;
+    private final long offset;
+    private final byte[] data;
+    private final boolean last;
+    private final List<ChainHop> hops;
+
+    public BackupChainChunkMessage(SimpleNodeInfo responseSocketInfo, long transferId, long offset, byte[] data, boolean last, List<ChainHop> hops) {
+        super(MESSAGE_TYPE.BACKUP_CHAIN_CHUNK);
+        this.responseSocketInfo = responseSocketInfo;
+        this.transferId = transferId;
+        this.offset = offset;
+        this.data = data;
+        this.last = last;
+        this.hops = hops;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        n.handleBackupChainChunk(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    public List<ChainHop> getHops() {
+        return hops;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        out.writeLong(this.transferId);
+        out.writeLong(this.offset);
+        out.writeBoolean(this.last);
+        Wire.writeHops(out, this.hops);
+        Wire.writeBytes(out, this.data);
+    }
+
+    public static BackupChainChunkMessage decode(DataInputStream in) throws IOException {
+        SimpleNodeInfo responseSocketInfo = Wire.readNode(in);
+        long transferId = in.readLong();
+        long offset = in.readLong();
+        boolean last = in.readBoolean();
+        List<ChainHop> hops = Wire.readHops(in);
+
+        return new BackupChainChunkMessage(responseSocketInfo, transferId, offset, Wire.readBytes(in), last, hops);
+    }
+}
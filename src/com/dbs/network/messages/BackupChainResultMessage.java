@@ -0,0 +1,41 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ChainHop;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answer to the last chunk of a chain transfer. Lists, for the answering node and every node after it,
+ * the replicas that were stored. Replicas of hops missing from the list were not stored.
+ */
+public class BackupChainResultMessage extends ChordMessage {
+
+    private final List<ChainHop> stored;
+
+    public BackupChainResultMessage(List<ChainHop> stored) {
+        super(MESSAGE_TYPE.BACKUP_CHAIN_RESULT);
+        this.stored = stored;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public List<ChainHop> getStored() {
+        return stored;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeHops(out, this.stored);
+    }
+
+    public static BackupChainResultMessage decode(DataInputStream in) throws IOException {
+        return new BackupChainResultMessage(Wire.readHops(in));
+    }
+}
@@ -0,0 +1,44 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Sent as an answer to every BackupChunkMessage except the last one, once the chunk is on disk
+ */
+public class BackupChunkACKMessage extends ChordMessage {
+
+    private final long transferId;
+    private final long offset;
+
+    public BackupChunkACKMessage(long transferId, long offset) {
+        super(MESSAGE_TYPE.BACKUP_CHUNK_ACK);
+        this.transferId = transferId;
+        this.offset = offset;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        out.writeLong(this.transferId);
+        out.writeLong(this.offset);
+    }
+
+    public static BackupChunkACKMessage decode(DataInputStream in) throws IOException {
+        return new BackupChunkACKMessage(in.readLong(), in.readLong());
+    }
+}
@@ -0,0 +1,85 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One piece of a replica's content, sent after the backup request was acknowledged.
+ * All chunks of a replica share the same transfer id. The chunk at offset 0 opens the transfer and the last one completes it.
+ */
+public class BackupChunkMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final ReplicaIdentifier replicaId;
+    private final long transferId;
+    private final long offset;
+    private final byte[] data;
+    private final boolean last;
+
+    public BackupChunkMessage(SimpleNodeInfo responseSocketInfo, ReplicaIdentifier replicaId, long transferId, long offset, byte[] data, boolean last) {
+        super(MESSAGE_TYPE.BACKUP_CHUNK);
+        this.responseSocketInfo = responseSocketInfo;
+        this.replicaId = replicaId;
+        this.transferId = transferId;
+        this.offset = offset;
+        this.data = data;
+        this.last = last;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        n.handleBackupChunk(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public ReplicaIdentifier getReplicaId() {
+        return replicaId;
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        Wire.writeReplicaId(out, this.replicaId);
+        out.writeLong(this.transferId);
+        out.writeLong(this.offset);
+        out.writeBoolean(this.last);
+        Wire.writeBytes(out, this.data);
+    }
+
+    public static BackupChunkMessage decode(DataInputStream in) throws IOException {
+        SimpleNodeInfo responseSocketInfo = Wire.readNode(in);
+        ReplicaIdentifier replicaId = Wire.readReplicaId(in);
+        long transferId = in.readLong();
+        long offset = in.readLong();
+        boolean last = in.readBoolean();
+
+        return new BackupChunkMessage(responseSocketInfo, replicaId, transferId, offset, Wire.readBytes(in), last);
+    }
+}
@@ -3,10 +3,12 @@ package com.dbs.network.messages;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
 
 public class BackupConfirmMessage extends BackupResponseMessage{
     public BackupConfirmMessage(SimpleNodeInfo node, ReplicaIdentifier replicaId) {
@@ -17,4 +19,8 @@ public class BackupConfirmMessage extends BackupResponseMessage{
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
     }
+
+    public static BackupConfirmMessage decode(DataInputStream in) throws IOException {
+        return new BackupConfirmMessage(Wire.readNode(in), Wire.readReplicaId(in));
+    }
 }
@@ -2,9 +2,17 @@ package com.dbs.network.messages;
 
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.IOException;
 
 public class BackupNACKMessage extends BackupResponseMessage {
     public BackupNACKMessage(SimpleNodeInfo node, ReplicaIdentifier fileId) {
         super(MESSAGE_TYPE.BACKUP_NACK, node, fileId);
     }
+
+    public static BackupNACKMessage decode(DataInputStream in) throws IOException {
+        return new BackupNACKMessage(Wire.readNode(in), Wire.readReplicaId(in));
+    }
 }
@@ -4,11 +4,14 @@ import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class BackupPayloadMessage extends ChordMessage {
 
@@ -40,4 +43,15 @@ public class BackupPayloadMessage extends ChordMessage {
     public byte[] getData() {
         return data;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        Wire.writeReplicaId(out, this.replicaId);
+        Wire.writeBytes(out, this.data);
+    }
+
+    public static BackupPayloadMessage decode(DataInputStream in) throws IOException {
+        return new BackupPayloadMessage(Wire.readNode(in), Wire.readReplicaId(in), Wire.readBytes(in));
+    }
 }
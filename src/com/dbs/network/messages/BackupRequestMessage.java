@@ -4,11 +4,14 @@ import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class BackupRequestMessage extends ChordMessage{
     private final SimpleNodeInfo responseSocketInfo;
@@ -48,4 +51,16 @@ public class BackupRequestMessage extends ChordMessage{
     public boolean isOriginalRequest() {
         return isOriginalRequest;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        Wire.writeNode(out, this.originNode);
+        Wire.writeReplicaId(out, this.replicaId);
+        out.writeBoolean(this.isOriginalRequest);
+    }
+
+    public static BackupRequestMessage decode(DataInputStream in) throws IOException {
+        return new BackupRequestMessage(Wire.readNode(in), Wire.readNode(in), Wire.readReplicaId(in), in.readBoolean());
+    }
 }
@@ -3,10 +3,13 @@ package com.dbs.network.messages;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class BackupResponseMessage extends NodeInfoMessage {
     private final ReplicaIdentifier fileId;
@@ -20,4 +23,10 @@ public class BackupResponseMessage extends NodeInfoMessage {
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.node);
+        Wire.writeReplicaId(out, this.fileId);
+    }
 }
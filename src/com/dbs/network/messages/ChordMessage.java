@@ -2,8 +2,10 @@ package com.dbs.network.messages;
 
 import com.dbs.chord.Node;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 
@@ -50,12 +52,47 @@ public abstract class ChordMessage implements Serializable {
                     return (NotFoundMessage) obj;
                 case UPDATE_REPLICA_LOCATION:
                     return (UpdateReplicaLocationMessage) obj;
+                case BACKUP_CHUNK:
+                    return (BackupChunkMessage) obj;
+                case BACKUP_CHUNK_ACK:
+                    return (BackupChunkACKMessage) obj;
+                case RESTORE_CHUNK_REQUEST:
+                    return (RestoreChunkRequestMessage) obj;
+                case RESTORE_CHUNK:
+                    return (RestoreChunkMessage) obj;
+                case BACKUP_CHAIN_CHUNK:
+                    return (BackupChainChunkMessage) obj;
+                case BACKUP_CHAIN_RESULT:
+                    return (BackupChainResultMessage) obj;
+                case LOOKUP_STEP:
+                    return (LookupStepMessage) obj;
+                case LOOKUP_STEP_REPLY:
+                    return (LookupStepReplyMessage) obj;
+                case HEARTBEAT:
+                    return (HeartbeatMessage) obj;
+                case LOOKUP_BATCH:
+                    return (LookupBatchMessage) obj;
+                case LOOKUP_BATCH_REPLY:
+                    return (LookupBatchReplyMessage) obj;
+                case FIND_SUCCESSORS:
+                    return (FindSuccessorsMessage) obj;
+                case SUCCESSORS:
+                    return (SuccessorsMessage) obj;
+                case FETCH_FINGER_TABLE:
+                    return (FetchFingerTableMessage) obj;
+                case FINGER_TABLE:
+                    return (FingerTableMessage) obj;
+                case LEAVE:
+                    return (LeaveMessage) obj;
+                case REPLICA_RANGE:
+                    return (ReplicaRangeMessage) obj;
                 default:
                     return msg;
             }
         } else throw new ClassCastException();
     }
 
+    // The ordinal is the type tag in BinaryCodec, so new types must be added at the end
     public enum MESSAGE_TYPE {
         FETCH_PREDECESSOR,
         FIND_SUCCESSOR,
@@ -74,14 +111,90 @@ public abstract class ChordMessage implements Serializable {
         DELETE,
         DELETE_CONFIRM,
         NOT_FOUND,
-        UPDATE_REPLICA_LOCATION
+        UPDATE_REPLICA_LOCATION,
+        BACKUP_CHUNK,
+        BACKUP_CHUNK_ACK,
+        RESTORE_CHUNK_REQUEST,
+        RESTORE_CHUNK,
+        BACKUP_CHAIN_CHUNK,
+        BACKUP_CHAIN_RESULT,
+        LOOKUP_STEP,
+        LOOKUP_STEP_REPLY,
+        HEARTBEAT,
+        LOOKUP_BATCH,
+        LOOKUP_BATCH_REPLY,
+        FIND_SUCCESSORS,
+        SUCCESSORS,
+        FETCH_FINGER_TABLE,
+        FINGER_TABLE,
+        LEAVE,
+        REPLICA_RANGE
     }
 
     private MESSAGE_TYPE type;
 
+    // Correlates a reply with the request it answers. 0 when the message is not part of a request
+    private long requestId = 0;
+    private boolean reply = false;
+    // Virtual node of the receiving peer the message is meant for
+    private int vnode = 0;
+
     public ChordMessage(MESSAGE_TYPE type) {
         this.type = type;
     }
 
+    public MESSAGE_TYPE getType() {
+        return type;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public boolean isReply() {
+        return reply;
+    }
+
+    public void setReply(boolean reply) {
+        this.reply = reply;
+    }
+
+    public int getVnode() {
+        return vnode;
+    }
+
+    public void setVnode(int vnode) {
+        this.vnode = vnode;
+    }
+
+    /**
+     * Writes this message's fields for BinaryCodec. Each message type also has a static decode that reads them back
+     * in the same order
+     *
+     * @param out - stream to write to
+     */
+    public abstract void encode(DataOutputStream out) throws IOException;
+
+    /**
+     * Content that the transport writes right after the encoded message instead of copying it into the encoding.
+     * A message with a body writes the body's length as the last field of encode, so the receiver reads it back as a
+     * length-prefixed byte array.
+     *
+     * @return the body, or null if everything is in the encoded fields
+     */
+    public ByteBuffer getBody() {
+        return null;
+    }
+
+    /**
+     * Called by the transport once the body has been written, or when it can no longer be
+     */
+    public void releaseBody() {
+    }
+
     public abstract void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException;
 }
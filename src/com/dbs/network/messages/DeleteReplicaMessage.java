@@ -3,10 +3,13 @@ package com.dbs.network.messages;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class DeleteReplicaMessage extends NodeInfoMessage{
 
@@ -25,4 +28,14 @@ public class DeleteReplicaMessage extends NodeInfoMessage{
     public ReplicaIdentifier getReplicaId() {
         return replicaId;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.node);
+        Wire.writeReplicaId(out, this.replicaId);
+    }
+
+    public static DeleteReplicaMessage decode(DataInputStream in) throws IOException {
+        return new DeleteReplicaMessage(Wire.readNode(in), Wire.readReplicaId(in));
+    }
 }
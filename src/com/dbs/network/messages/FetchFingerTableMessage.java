@@ -0,0 +1,41 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Sent by a joining node to its new successor, to start routing from the successor's view of the ring
+ */
+public class FetchFingerTableMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+
+    public FetchFingerTableMessage(SimpleNodeInfo responseSocketInfo) {
+        super(MESSAGE_TYPE.FETCH_FINGER_TABLE);
+        this.responseSocketInfo = responseSocketInfo;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleFingerTableRequest(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+    }
+
+    public static FetchFingerTableMessage decode(DataInputStream in) throws IOException {
+        return new FetchFingerTableMessage(Wire.readNode(in));
+    }
+}
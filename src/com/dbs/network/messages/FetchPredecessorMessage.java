@@ -3,11 +3,14 @@ package com.dbs.network.messages;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class FetchPredecessorMessage extends ChordMessage {
 
@@ -20,6 +23,19 @@ public class FetchPredecessorMessage extends ChordMessage {
 
     @Override
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        n.handlePredecessorRequest(this.responseSocketInfo);
+        n.handlePredecessorRequest(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+    }
+
+    public static FetchPredecessorMessage decode(DataInputStream in) throws IOException {
+        return new FetchPredecessorMessage(Wire.readNode(in));
     }
 }
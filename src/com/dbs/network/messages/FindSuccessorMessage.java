@@ -3,12 +3,15 @@ package com.dbs.network.messages;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 
 /**
@@ -27,7 +30,15 @@ public class FindSuccessorMessage extends ChordMessage {
 
     @Override
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        n.handleSuccessorRequest(this.responseSocketInfo, this.key);
+        n.handleSuccessorRequest(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public BigInteger getKey() {
+        return key;
     }
 
     @Override
@@ -37,4 +48,14 @@ public class FindSuccessorMessage extends ChordMessage {
                 ", key=" + key +
                 '}';
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        Wire.writeKey(out, this.key);
+    }
+
+    public static FindSuccessorMessage decode(DataInputStream in) throws IOException {
+        return new FindSuccessorMessage(Wire.readNode(in), Wire.readKey(in));
+    }
 }
@@ -0,0 +1,63 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sent when a node wants the successors of several keys. Each node answers the keys it can and splits the others by
+ * next hop, sending one FindSuccessorsMessage per hop, so keys that share a route share the messages
+ */
+public class FindSuccessorsMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final List<BigInteger> keys;
+
+    public FindSuccessorsMessage(SimpleNodeInfo responseSocketInfo, List<BigInteger> keys) {
+        super(MESSAGE_TYPE.FIND_SUCCESSORS);
+        this.responseSocketInfo = responseSocketInfo;
+        this.keys = keys;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleSuccessorsRequest(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public List<BigInteger> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        out.writeInt(this.keys.size());
+        for (BigInteger key : this.keys) {
+            Wire.writeKey(out, key);
+        }
+    }
+
+    public static FindSuccessorsMessage decode(DataInputStream in) throws IOException {
+        SimpleNodeInfo responseSocketInfo = Wire.readNode(in);
+
+        int count = Wire.readCount(in, Wire.KEY_BYTES);
+        List<BigInteger> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(Wire.readKey(in));
+        }
+
+        return new FindSuccessorsMessage(responseSocketInfo, keys);
+    }
+}
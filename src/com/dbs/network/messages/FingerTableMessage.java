@@ -0,0 +1,56 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answer to a FetchFingerTableMessage: the sender's predecessor, successor list and the distinct nodes of its finger
+ * table. The node carried is the predecessor, NullSimpleNodeInfo if the sender has none
+ */
+public class FingerTableMessage extends NodeInfoMessage {
+
+    private final SimpleNodeInfo sender;
+    private final List<SimpleNodeInfo> successors;
+    private final List<SimpleNodeInfo> fingers;
+
+    public FingerTableMessage(SimpleNodeInfo sender, SimpleNodeInfo predecessor, List<SimpleNodeInfo> successors, List<SimpleNodeInfo> fingers) {
+        super(MESSAGE_TYPE.FINGER_TABLE, predecessor);
+        this.sender = sender;
+        this.successors = successors;
+        this.fingers = fingers;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public SimpleNodeInfo getSender() {
+        return sender;
+    }
+
+    public List<SimpleNodeInfo> getSuccessors() {
+        return successors;
+    }
+
+    public List<SimpleNodeInfo> getFingers() {
+        return fingers;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.sender);
+        Wire.writeNode(out, this.node);
+        Wire.writeNodes(out, this.successors);
+        Wire.writeNodes(out, this.fingers);
+    }
+
+    public static FingerTableMessage decode(DataInputStream in) throws IOException {
+        return new FingerTableMessage(Wire.readNode(in), Wire.readNode(in), Wire.readNodes(in), Wire.readNodes(in));
+    }
+}
@@ -0,0 +1,43 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Sent by stabilize to the successor. Notifies it that the sender may be its predecessor and shows the sender is
+ * alive. Answered with a PredecessorMessage holding the successor's predecessor and successor list, which also shows
+ * the successor is alive.
+ */
+public class HeartbeatMessage extends ChordMessage {
+
+    private final SimpleNodeInfo sender;
+
+    public HeartbeatMessage(SimpleNodeInfo sender) {
+        super(MESSAGE_TYPE.HEARTBEAT);
+        this.sender = sender;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleHeartbeat(this);
+    }
+
+    public SimpleNodeInfo getSender() {
+        return sender;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.sender);
+    }
+
+    public static HeartbeatMessage decode(DataInputStream in) throws IOException {
+        return new HeartbeatMessage(Wire.readNode(in));
+    }
+}
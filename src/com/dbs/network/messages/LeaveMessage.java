@@ -0,0 +1,57 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Sent by a node leaving the ring to its predecessor and successor, so they link to each other directly instead of
+ * waiting to detect that it is gone. Answered with a PredecessorMessage
+ */
+public class LeaveMessage extends ChordMessage {
+
+    private final SimpleNodeInfo sender;
+    // Neighbours of the leaving node. The predecessor is NullSimpleNodeInfo if it had none
+    private final SimpleNodeInfo predecessor;
+    private final SimpleNodeInfo successor;
+
+    public LeaveMessage(SimpleNodeInfo sender, SimpleNodeInfo predecessor, SimpleNodeInfo successor) {
+        super(MESSAGE_TYPE.LEAVE);
+        this.sender = sender;
+        this.predecessor = predecessor;
+        this.successor = successor;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleLeave(this);
+    }
+
+    public SimpleNodeInfo getSender() {
+        return sender;
+    }
+
+    public SimpleNodeInfo getPredecessor() {
+        return predecessor;
+    }
+
+    public SimpleNodeInfo getSuccessor() {
+        return successor;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.sender);
+        Wire.writeNode(out, this.predecessor);
+        Wire.writeNode(out, this.successor);
+    }
+
+    public static LeaveMessage decode(DataInputStream in) throws IOException {
+        return new LeaveMessage(Wire.readNode(in), Wire.readNode(in), Wire.readNode(in));
+    }
+}
@@ -0,0 +1,62 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asks a node about several keys at once. Like LookupStepMessage, the receiver answers itself instead of forwarding
+ */
+public class LookupBatchMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final List<BigInteger> keys;
+
+    public LookupBatchMessage(SimpleNodeInfo responseSocketInfo, List<BigInteger> keys) {
+        super(MESSAGE_TYPE.LOOKUP_BATCH);
+        this.responseSocketInfo = responseSocketInfo;
+        this.keys = keys;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleLookupBatch(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public List<BigInteger> getKeys() {
+        return keys;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        out.writeInt(this.keys.size());
+        for (BigInteger key : this.keys) {
+            Wire.writeKey(out, key);
+        }
+    }
+
+    public static LookupBatchMessage decode(DataInputStream in) throws IOException {
+        SimpleNodeInfo responseSocketInfo = Wire.readNode(in);
+
+        int count = Wire.readCount(in, Wire.KEY_BYTES);
+        List<BigInteger> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(Wire.readKey(in));
+        }
+
+        return new LookupBatchMessage(responseSocketInfo, keys);
+    }
+}
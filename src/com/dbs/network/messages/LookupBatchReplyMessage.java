@@ -0,0 +1,40 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.LookupAnswer;
+import com.dbs.chord.Node;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answer to a LookupBatchMessage, with one LookupAnswer per key asked
+ */
+public class LookupBatchReplyMessage extends ChordMessage {
+
+    private final List<LookupAnswer> answers;
+
+    public LookupBatchReplyMessage(List<LookupAnswer> answers) {
+        super(MESSAGE_TYPE.LOOKUP_BATCH_REPLY);
+        this.answers = answers;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public List<LookupAnswer> getAnswers() {
+        return answers;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeAnswers(out, this.answers);
+    }
+
+    public static LookupBatchReplyMessage decode(DataInputStream in) throws IOException {
+        return new LookupBatchReplyMessage(Wire.readAnswers(in));
+    }
+}
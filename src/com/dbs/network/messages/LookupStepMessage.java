@@ -0,0 +1,50 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Sent by a node doing an iterative lookup. The receiver answers itself instead of forwarding the request,
+ * with the key's successor if it knows it, or with the nodes it knows that are closest before the key
+ */
+public class LookupStepMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final BigInteger key;
+
+    public LookupStepMessage(SimpleNodeInfo responseSocketInfo, BigInteger key) {
+        super(MESSAGE_TYPE.LOOKUP_STEP);
+        this.responseSocketInfo = responseSocketInfo;
+        this.key = key;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleLookupStep(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public BigInteger getKey() {
+        return key;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        Wire.writeKey(out, this.key);
+    }
+
+    public static LookupStepMessage decode(DataInputStream in) throws IOException {
+        return new LookupStepMessage(Wire.readNode(in), Wire.readKey(in));
+    }
+}
@@ -0,0 +1,50 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Answer to a LookupStepMessage. Carries the key's successor and the start of its range, or NullSimpleNodeInfo and the
+ * candidates to ask next, closest to the key first
+ */
+public class LookupStepReplyMessage extends NodeInfoMessage {
+
+    private final BigInteger rangeStart;
+    private final List<SimpleNodeInfo> candidates;
+
+    public LookupStepReplyMessage(SimpleNodeInfo successor, BigInteger rangeStart, List<SimpleNodeInfo> candidates) {
+        super(MESSAGE_TYPE.LOOKUP_STEP_REPLY, successor);
+        this.rangeStart = rangeStart;
+        this.candidates = candidates;
+    }
+
+    public BigInteger getRangeStart() {
+        return rangeStart;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public List<SimpleNodeInfo> getCandidates() {
+        return candidates;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.node);
+        Wire.writeKey(out, this.rangeStart);
+        Wire.writeNodes(out, this.candidates);
+    }
+
+    public static LookupStepReplyMessage decode(DataInputStream in) throws IOException {
+        return new LookupStepReplyMessage(Wire.readNode(in), Wire.readKey(in), Wire.readNodes(in));
+    }
+}
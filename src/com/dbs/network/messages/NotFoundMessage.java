@@ -5,6 +5,7 @@ import com.dbs.chord.Node;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataOutputStream;
 
 public class NotFoundMessage extends ChordMessage {
     public NotFoundMessage() {
@@ -15,4 +16,8 @@ public class NotFoundMessage extends ChordMessage {
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
     }
+
+    @Override
+    public void encode(DataOutputStream out) {
+    }
 }
@@ -2,10 +2,13 @@ package com.dbs.network.messages;
 
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class NotifySuccessorMessage extends ChordMessage {
 
@@ -20,4 +23,13 @@ public class NotifySuccessorMessage extends ChordMessage {
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
         n.handlePredecessorNotification(this.responseSocketInfo);
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+    }
+
+    public static NotifySuccessorMessage decode(DataInputStream in) throws IOException {
+        return new NotifySuccessorMessage(Wire.readNode(in));
+    }
 }
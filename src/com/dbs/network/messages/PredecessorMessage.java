@@ -5,28 +5,48 @@ import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.network.NullNodeInfo;
 import com.dbs.network.NullSimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class PredecessorMessage extends NodeInfoMessage {
 
     SimpleNodeInfo sender;
+    // The sender's successor list, so the requester can extend its own
+    List<SimpleNodeInfo> successors;
 
-    public PredecessorMessage(SimpleNodeInfo sender, SimpleNodeInfo predecessor) {
+    public PredecessorMessage(SimpleNodeInfo sender, SimpleNodeInfo predecessor, List<SimpleNodeInfo> successors) {
         super(MESSAGE_TYPE.PREDECESSOR, predecessor);
         this.sender = sender;
+        this.successors = successors;
     }
 
-    public PredecessorMessage(SimpleNodeInfo sender, NullNodeInfo predecessor) throws IOException, NoSuchAlgorithmException {
-        super(MESSAGE_TYPE.PREDECESSOR, new NullSimpleNodeInfo());
-        this.sender = sender;
+    public PredecessorMessage(SimpleNodeInfo sender, NullNodeInfo predecessor, List<SimpleNodeInfo> successors) throws IOException, NoSuchAlgorithmException {
+        this(sender, new NullSimpleNodeInfo(), successors);
+    }
+
+    public List<SimpleNodeInfo> getSuccessors() {
+        return successors;
     }
 
     @Override
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
     }
 
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.sender);
+        Wire.writeNode(out, this.node);
+        Wire.writeNodes(out, this.successors);
+    }
+
+    public static PredecessorMessage decode(DataInputStream in) throws IOException {
+        return new PredecessorMessage(Wire.readNode(in), Wire.readNode(in), Wire.readNodes(in));
+    }
 }
@@ -0,0 +1,82 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One batch of the replica locations of a key range that changed owner, sent by the previous owner to the new one.
+ * The batches of a range share a transfer id and are numbered by the offset of their first entry, like the chunks of a
+ * streamed replica, and each one is answered with a BackupChunkACKMessage once the locations are recorded
+ */
+public class ReplicaRangeMessage extends ChordMessage {
+
+    private final SimpleNodeInfo responseSocketInfo;
+    private final long transferId;
+    private final long offset;
+    private final Map<ReplicaIdentifier, SimpleNodeInfo> locations;
+
+    public ReplicaRangeMessage(SimpleNodeInfo responseSocketInfo, long transferId, long offset, Map<ReplicaIdentifier, SimpleNodeInfo> locations) {
+        super(MESSAGE_TYPE.REPLICA_RANGE);
+        this.responseSocketInfo = responseSocketInfo;
+        this.transferId = transferId;
+        this.offset = offset;
+        this.locations = locations;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException {
+        n.handleReplicaRange(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    public long getTransferId() {
+        return transferId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public Map<ReplicaIdentifier, SimpleNodeInfo> getLocations() {
+        return locations;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+        out.writeLong(this.transferId);
+        out.writeLong(this.offset);
+
+        out.writeInt(this.locations.size());
+        for (Map.Entry<ReplicaIdentifier, SimpleNodeInfo> location : this.locations.entrySet()) {
+            Wire.writeReplicaId(out, location.getKey());
+            Wire.writeNode(out, location.getValue());
+        }
+    }
+
+    public static ReplicaRangeMessage decode(DataInputStream in) throws IOException {
+        SimpleNodeInfo responseSocketInfo = Wire.readNode(in);
+        long transferId = in.readLong();
+        long offset = in.readLong();
+
+        int count = Wire.readCount(in, Wire.MIN_REPLICA_ID_BYTES + Wire.MIN_NODE_BYTES);
+        Map<ReplicaIdentifier, SimpleNodeInfo> locations = new LinkedHashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            locations.put(Wire.readReplicaId(in), Wire.readNode(in));
+        }
+
+        return new ReplicaRangeMessage(responseSocketInfo, transferId, offset, locations);
+    }
+}
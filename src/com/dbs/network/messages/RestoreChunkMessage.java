@@ -0,0 +1,104 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.filemanager.BufferPool;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Answer to a RestoreChunkRequestMessage. On the sending side the content stays in the pooled buffer it was read into
+ * and is written by the transport as the message's body. On the receiving side it is a plain byte array.
+ */
+public class RestoreChunkMessage extends ChordMessage {
+
+    private final SimpleNodeInfo originNode;
+    private final ReplicaIdentifier replicaId;
+    private final long offset;
+    private byte[] data;
+
+    private transient ByteBuffer body;
+    private transient BufferPool bodyPool;
+
+    public RestoreChunkMessage(SimpleNodeInfo originNode, ReplicaIdentifier replicaId, long offset, byte[] data) {
+        super(MESSAGE_TYPE.RESTORE_CHUNK);
+        this.originNode = originNode;
+        this.replicaId = replicaId;
+        this.offset = offset;
+        this.data = data;
+    }
+
+    public RestoreChunkMessage(SimpleNodeInfo originNode, ReplicaIdentifier replicaId, long offset, ByteBuffer body, BufferPool bodyPool) {
+        this(originNode, replicaId, offset, null);
+        this.body = body;
+        this.bodyPool = bodyPool;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public SimpleNodeInfo getOriginNode() {
+        return originNode;
+    }
+
+    public ReplicaIdentifier getReplicaId() {
+        return replicaId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    @Override
+    public ByteBuffer getBody() {
+        return body;
+    }
+
+    @Override
+    public synchronized void releaseBody() {
+        if (this.body != null) {
+            this.bodyPool.release(this.body);
+            this.body = null;
+        }
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.originNode);
+        Wire.writeReplicaId(out, this.replicaId);
+        out.writeLong(this.offset);
+
+        if (this.body != null) {
+            // The transport writes the body itself right after this length
+            out.writeInt(this.body.remaining());
+        } else {
+            Wire.writeBytes(out, this.data);
+        }
+    }
+
+    public static RestoreChunkMessage decode(DataInputStream in) throws IOException {
+        return new RestoreChunkMessage(Wire.readNode(in), Wire.readReplicaId(in), in.readLong(), Wire.readBytes(in));
+    }
+
+    /**
+     * Java serialization has no notion of a body, so the content is copied into the message
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (this.data == null && this.body != null) {
+            this.data = new byte[this.body.remaining()];
+            this.body.duplicate().get(this.data);
+        }
+        out.defaultWriteObject();
+    }
+}
@@ -0,0 +1,72 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Asks for length bytes of a replica starting at offset. Routed like a RestoreRequestMessage until it reaches the
+ * node holding the replica, which answers with a RestoreChunkMessage
+ */
+public class RestoreChunkRequestMessage extends ChordMessage {
+
+    private final SimpleNodeInfo requestSocketInfo;
+    private final SimpleNodeInfo originNode;
+    private final ReplicaIdentifier replicaId;
+    private final long offset;
+    private final int length;
+
+    public RestoreChunkRequestMessage(SimpleNodeInfo requestSocketInfo, SimpleNodeInfo originNode, ReplicaIdentifier replicaId, long offset, int length) {
+        super(MESSAGE_TYPE.RESTORE_CHUNK_REQUEST);
+        this.requestSocketInfo = requestSocketInfo;
+        this.originNode = originNode;
+        this.replicaId = replicaId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        n.handleRestoreChunkRequest(this);
+    }
+
+    public SimpleNodeInfo getRequestSocketInfo() {
+        return requestSocketInfo;
+    }
+
+    public SimpleNodeInfo getOriginNode() {
+        return originNode;
+    }
+
+    public ReplicaIdentifier getReplicaId() {
+        return replicaId;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.requestSocketInfo);
+        Wire.writeNode(out, this.originNode);
+        Wire.writeReplicaId(out, this.replicaId);
+        out.writeLong(this.offset);
+        out.writeInt(this.length);
+    }
+
+    public static RestoreChunkRequestMessage decode(DataInputStream in) throws IOException {
+        return new RestoreChunkRequestMessage(Wire.readNode(in), Wire.readNode(in), Wire.readReplicaId(in), in.readLong(), in.readInt());
+    }
+}
@@ -4,11 +4,14 @@ import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
 import com.dbs.utils.ConsoleLogger;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class RestorePayloadMessage extends ChordMessage {
 
@@ -39,4 +42,15 @@ public class RestorePayloadMessage extends ChordMessage {
     public byte[] getData() {
         return data;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.originNode);
+        Wire.writeReplicaId(out, this.replicaId);
+        Wire.writeBytes(out, this.data);
+    }
+
+    public static RestorePayloadMessage decode(DataInputStream in) throws IOException {
+        return new RestorePayloadMessage(Wire.readNode(in), Wire.readReplicaId(in), Wire.readBytes(in));
+    }
 }
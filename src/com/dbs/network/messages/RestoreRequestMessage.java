@@ -3,10 +3,13 @@ package com.dbs.network.messages;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class RestoreRequestMessage extends ChordMessage {
 
@@ -37,4 +40,15 @@ public class RestoreRequestMessage extends ChordMessage {
     public SimpleNodeInfo getRequestSocketInfo() {
         return requestSocketInfo;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.requestSocketInfo);
+        Wire.writeNode(out, this.originNode);
+        Wire.writeReplicaId(out, this.replicaId);
+    }
+
+    public static RestoreRequestMessage decode(DataInputStream in) throws IOException {
+        return new RestoreRequestMessage(Wire.readNode(in), Wire.readNode(in), Wire.readReplicaId(in));
+    }
 }
@@ -2,10 +2,13 @@ package com.dbs.network.messages;
 
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class StatusCheckConfirmMessage extends NodeInfoMessage {
 
@@ -17,4 +20,13 @@ public class StatusCheckConfirmMessage extends NodeInfoMessage {
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.node);
+    }
+
+    public static StatusCheckConfirmMessage decode(DataInputStream in) throws IOException {
+        return new StatusCheckConfirmMessage(Wire.readNode(in));
+    }
 }
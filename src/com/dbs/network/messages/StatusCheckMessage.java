@@ -2,10 +2,13 @@ package com.dbs.network.messages;
 
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class StatusCheckMessage extends NodeInfoMessage {
     SimpleNodeInfo responseSocketInfo;
@@ -17,6 +20,19 @@ public class StatusCheckMessage extends NodeInfoMessage {
 
     @Override
     public void handle(Node n) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        n.handleStatusCheck(this.responseSocketInfo);
+        n.handleStatusCheck(this);
+    }
+
+    public SimpleNodeInfo getResponseSocketInfo() {
+        return responseSocketInfo;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeNode(out, this.responseSocketInfo);
+    }
+
+    public static StatusCheckMessage decode(DataInputStream in) throws IOException {
+        return new StatusCheckMessage(Wire.readNode(in));
     }
 }
@@ -2,8 +2,12 @@ package com.dbs.network.messages;
 
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.math.BigInteger;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 
 
 /**
@@ -12,14 +16,31 @@ import java.math.BigInteger;
 public class SuccessorMessage extends NodeInfoMessage {
 
     BigInteger key;
+    // The successor is responsible for the keys after rangeStart, up to its own
+    BigInteger rangeStart;
 
-    public SuccessorMessage(BigInteger key, SimpleNodeInfo successor) {
+    public SuccessorMessage(BigInteger key, SimpleNodeInfo successor, BigInteger rangeStart) {
         super(MESSAGE_TYPE.SUCCESSOR, successor);
         this.key = key;
+        this.rangeStart = rangeStart;
+    }
+
+    public BigInteger getRangeStart() {
+        return rangeStart;
     }
 
     @Override
     public void handle(Node n) {
     }
 
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeKey(out, this.key);
+        Wire.writeNode(out, this.node);
+        Wire.writeKey(out, this.rangeStart);
+    }
+
+    public static SuccessorMessage decode(DataInputStream in) throws IOException {
+        return new SuccessorMessage(Wire.readKey(in), Wire.readNode(in), Wire.readKey(in));
+    }
 }
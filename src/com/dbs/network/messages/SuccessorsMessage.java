@@ -0,0 +1,41 @@
+package com.dbs.network.messages;
+
+import com.dbs.chord.LookupAnswer;
+import com.dbs.chord.Node;
+import com.dbs.network.codec.Wire;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Answer to a FindSuccessorsMessage, with the successor and range start of every key that could be resolved.
+ * Keys whose route failed are left out
+ */
+public class SuccessorsMessage extends ChordMessage {
+
+    private final List<LookupAnswer> answers;
+
+    public SuccessorsMessage(List<LookupAnswer> answers) {
+        super(MESSAGE_TYPE.SUCCESSORS);
+        this.answers = answers;
+    }
+
+    @Override
+    public void handle(Node n) {
+    }
+
+    public List<LookupAnswer> getAnswers() {
+        return answers;
+    }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeAnswers(out, this.answers);
+    }
+
+    public static SuccessorsMessage decode(DataInputStream in) throws IOException {
+        return new SuccessorsMessage(Wire.readAnswers(in));
+    }
+}
@@ -3,10 +3,13 @@ package com.dbs.network.messages;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.chord.Node;
 import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.codec.Wire;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.ExecutionException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 
 public class UpdateReplicaLocationMessage extends NodeInfoMessage{
     private final ReplicaIdentifier replicaId;
@@ -24,4 +27,14 @@ public class UpdateReplicaLocationMessage extends NodeInfoMessage{
     public ReplicaIdentifier getReplicaId() {
         return replicaId;
     }
+
+    @Override
+    public void encode(DataOutputStream out) throws IOException {
+        Wire.writeReplicaId(out, this.replicaId);
+        Wire.writeNode(out, this.node);
+    }
+
+    public static UpdateReplicaLocationMessage decode(DataInputStream in) throws IOException {
+        return new UpdateReplicaLocationMessage(Wire.readReplicaId(in), Wire.readNode(in));
+    }
 }
@@ -36,6 +36,12 @@ public class DistributedBackupServiceAdapter implements IDistributedBackupServic
         return node.getBackupManager().backup(file, repDegree);
     }
 
+    @Override
+    public String backupErasureCoded(String file, int dataFragments, int parityFragments) throws RemoteException {
+        file = "testfiles/" + file;
+        return node.getBackupManager().backupErasureCoded(file, dataFragments, parityFragments);
+    }
+
     @Override
     public String state() throws RemoteException {
         return node.getBackupManager().state();
@@ -57,4 +63,26 @@ public class DistributedBackupServiceAdapter implements IDistributedBackupServic
     public String reclaim(int newSizeBytes) throws RemoteException {
         return node.getReclaimManager().reclaim(newSizeBytes);
     }
+
+    @Override
+    public String metrics() throws RemoteException {
+        return node.getMetrics().toString();
+    }
+
+    @Override
+    public String leave() throws RemoteException {
+        return node.getLeaveManager().leave();
+    }
+
+    /**
+     * Removes this peer from the RMI registry, so clients stop finding it once it has left
+     */
+    public void unbind() {
+        try {
+            LocateRegistry.getRegistry().unbind(this.node.getNodeInfo().getAccessPoint());
+            UnicastRemoteObject.unexportObject(this, true);
+        } catch (Exception e) {
+            ConsoleLogger.log(WARNING, "Could not unbind from the RMI registry: " + e.getMessage());
+        }
+    }
 }
@@ -6,10 +6,13 @@ import java.rmi.RemoteException;
 public interface IDistributedBackupService extends Remote {
 
     String backup(String file, int repDegree) throws RemoteException;
+    String backupErasureCoded(String file, int dataFragments, int parityFragments) throws RemoteException;
     String state() throws RemoteException;
     String restore(String file) throws RemoteException;
     String delete(String file) throws RemoteException;
     String reclaim(int newSizeBytes) throws RemoteException;
+    String metrics() throws RemoteException;
+    String leave() throws RemoteException;
 
 }
 
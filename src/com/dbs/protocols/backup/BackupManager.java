@@ -3,44 +3,81 @@ package com.dbs.protocols.backup;
 import com.dbs.chord.Node;
 import com.dbs.chord.NodeInfo;
 import com.dbs.chord.SimpleNodeInfo;
-import com.dbs.chord.Utils;
 import com.dbs.filemanager.FileManager;
+import com.dbs.filemanager.ReedSolomon;
+import com.dbs.filemanager.ReplicaContent;
+import com.dbs.filemanager.ReplicaStore;
 import com.dbs.network.messages.*;
+import com.dbs.utils.AsyncLimiter;
 import com.dbs.utils.ConsoleLogger;
-import com.dbs.utils.Network;
 
-import javax.net.ssl.SSLServerSocket;
+import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
-import static com.dbs.chord.Node.REQUEST_TIMEOUT_MS;
-import static com.dbs.chord.Utils.between;
 import static java.util.logging.Level.*;
 
 public class BackupManager {
 
+    // Files larger than one chunk are streamed to the replica holder instead of being sent in a single payload message
+    private static final int CHUNK_SIZE_BYTES = Integer.getInteger("dbs.backup.chunkSize", 1 << 20);
+    // Number of chunks of a transfer that may be sent before the oldest one is acknowledged
+    private static final int CHUNK_WINDOW = Integer.getInteger("dbs.backup.chunkWindow", 4);
+    // Incoming transfers that receive no chunk for this long are dropped along with their partial file
+    private static final int TRANSFER_TIMEOUT_MS = 4 * Node.REQUEST_TIMEOUT_MS;
+    // "fanout" sends the content from this node to every replica holder. "chain" sends it once, to the first holder,
+    // and each holder passes it on to the next
+    private static final String REPLICATION_MODE = System.getProperty("dbs.backup.replication", "fanout");
+    // Replica placements, of any file, that may be in progress at the same time
+    private static final int MAX_PLACEMENTS_IN_FLIGHT = Integer.getInteger("dbs.backup.maxInFlight", 16);
+    // "locations" hands only the replica locations of a range over to its new owner. "data" also moves the replicas
+    // of the range stored on this node
+    private static final String REBALANCE_MODE = System.getProperty("dbs.backup.rebalance", "locations");
+    // Replicas moved to a new owner at the same time. Kept low so a join does not take the bandwidth of backups
+    private static final int MAX_MIGRATIONS_IN_FLIGHT = Integer.getInteger("dbs.backup.maxMigrationsInFlight", 2);
+    // Replica locations sent per message when a range is handed over
+    private static final int RANGE_BATCH_SIZE = Integer.getInteger("dbs.backup.rangeBatchSize", 256);
+
     private final Node node;
 
-    private final ConcurrentHashMap<FileIdentifier, Integer> desiredFileRepDegree;
+    private final ConcurrentHashMap<Long, IncomingTransfer> incomingTransfers;
+    private final AsyncLimiter placements;
+    private final AsyncLimiter migrations;
+    // Replicas being moved to a new owner, so a second hand over of the same range does not send them again
+    private final Set<ReplicaIdentifier> migrating;
 
     public BackupManager(Node node) {
         this.node = node;
-        this.desiredFileRepDegree = new ConcurrentHashMap<>();
+        this.incomingTransfers = new ConcurrentHashMap<>();
+        this.placements = new AsyncLimiter(MAX_PLACEMENTS_IN_FLIGHT);
+        this.migrations = new AsyncLimiter(MAX_MIGRATIONS_IN_FLIGHT);
+        this.migrating = ConcurrentHashMap.newKeySet();
 
+        node.getThreadPool().scheduleWithFixedDelay(this::expireTransfers, TRANSFER_TIMEOUT_MS, TRANSFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
     }
 
     public String backup(String file, int repDegree) throws RemoteException {
@@ -49,36 +86,121 @@ public class BackupManager {
         // Waits for *all* futures to complete and returns a list of results.
         // If *any* future completes exceptionally then the resulting future will also complete exceptionally.
 
+        FileIdentifier fileId;
         ReplicaIdentifier[] replicaIds;
-        byte[] fileContent;
         try {
-            FileIdentifier fileId = FileIdentifier.fromPath(file);
+            fileId = FileIdentifier.fromPath(file);
             replicaIds = FileManager.generateReplicaIds(fileId, repDegree);
-            this.desiredFileRepDegree.put(fileId, repDegree);
+            this.node.getState().setDesiredRepDegree(fileId, repDegree);
         } catch (IOException | NoSuchAlgorithmException e) {
             throw new RemoteException("Could not generate file ids", e);
         }
 
+        this.node.prefetchSuccessors(replicaIds);
+
+        ArrayList<CompletableFuture<NodeInfo>> futures;
+
+        if (REPLICATION_MODE.equals("chain")) {
+            futures = initChainBackupOperation(replicaIds, Paths.get(file));
+        } else if (fileId.getFileSize() > CHUNK_SIZE_BYTES) {
+            Path source = Paths.get(file);
+            futures = initBackupOperation(replicaIds, replicaId -> this.node.requestBackup(replicaId, source));
+        } else {
+            byte[] fileContent;
+            try {
+                fileContent = FileManager.readFromFile(file);
+            } catch (ExecutionException | InterruptedException | FileNotFoundException e) {
+                throw new RemoteException("Could not read file contents", e);
+            }
+            futures = initBackupOperation(replicaIds, replicaId -> this.node.requestBackup(replicaId, fileContent));
+        }
+
+        // Wait until they are all done
+
+        StringBuilder retMsg = new StringBuilder();
+
+
+        handleBackupFutures(retMsg, futures);
+
+        this.syncState();
+
+        return retMsg.toString();
+    }
+
+    /**
+     * Splits the file into dataFragments fragments plus parityFragments parity fragments and stores each one at its own key.
+     * Any dataFragments of them rebuild the file, so up to parityFragments nodes can be lost while storing
+     * (dataFragments + parityFragments) / dataFragments times the file's size instead of one full copy per replica.
+     * The file is encoded in memory.
+     *
+     * @param file            - path of the file to back up
+     * @param dataFragments   - number of fragments the file is split into
+     * @param parityFragments - number of extra fragments that can be lost
+     * @return message describing where each fragment was stored
+     */
+    public String backupErasureCoded(String file, int dataFragments, int parityFragments) throws RemoteException {
+        ConsoleLogger.log(INFO, "Starting erasure coded backup");
+
+        ReedSolomon erasureCode;
+        try {
+            erasureCode = new ReedSolomon(dataFragments, parityFragments);
+        } catch (IllegalArgumentException e) {
+            return "Invalid number of fragments: " + e.getMessage();
+        }
+
+        FileIdentifier fileId;
+        byte[] fileContent;
         try {
+            fileId = FileIdentifier.fromPath(file);
             fileContent = FileManager.readFromFile(file);
-        } catch (ExecutionException | InterruptedException | FileNotFoundException e) {
+        } catch (IOException | ExecutionException | InterruptedException e) {
             throw new RemoteException("Could not read file contents", e);
         }
 
-        ArrayList<CompletableFuture<NodeInfo>> futures = initBackupOperation(replicaIds, fileContent);
+        byte[][] fragments = erasureCode.encode(fileContent);
 
-        // Wait until they are all done
+        ReplicaIdentifier[] fragmentIds;
+        try {
+            fragmentIds = FileManager.generateFragmentIds(fileId, erasureCode.getTotalFragments(), erasureCode.fragmentSize(fileId.getFileSize()));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new RemoteException("Could not generate file ids", e);
+        }
 
-        StringBuilder retMsg = new StringBuilder();
+        // Files backed up as fragments instead of full replicas are kept with the code that produced them
+        this.node.getState().setErasureCode(fileId, erasureCode);
 
+        this.node.prefetchSuccessors(fragmentIds);
+
+        ArrayList<CompletableFuture<NodeInfo>> futures = new ArrayList<>(fragmentIds.length);
+        for (int i = 0; i < fragmentIds.length; i++) {
+            try {
+                futures.add(this.node.requestBackup(fragmentIds[i], fragments[i]));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        StringBuilder retMsg = new StringBuilder();
 
         handleBackupFutures(retMsg, futures);
 
+        this.syncState();
 
         return retMsg.toString();
     }
 
-    private ArrayList<CompletableFuture<NodeInfo>> initBackupOperation(ReplicaIdentifier[] replicaIds, byte[] fileContent) {
+    /**
+     * Makes sure the file can still be restored and deleted from this node after it restarts
+     */
+    private void syncState() {
+        try {
+            this.node.getState().sync();
+        } catch (IOException e) {
+            ConsoleLogger.log(WARNING, "Could not save the state of the backup: " + e.getMessage());
+        }
+    }
+
+    private ArrayList<CompletableFuture<NodeInfo>> initBackupOperation(ReplicaIdentifier[] replicaIds, ReplicaRequester requester) {
 
         ArrayList<CompletableFuture<NodeInfo>> futures = new ArrayList<>(replicaIds.length);
 
@@ -86,13 +208,13 @@ public class BackupManager {
             try {
                 if(this.node.getState().hasReplicaLocation(replicaIds[i])){
                     CompletableFuture<NodeInfo> future = new CompletableFuture<>();
-                    future.complete(new NodeInfo(this.node.getState().getReplicasLocation().get(replicaIds[i])));
+                    future.complete(new NodeInfo(this.node.getState().getReplicaLocation(replicaIds[i])));
                     futures.add(i, future);
                 }else {
-                    CompletableFuture<NodeInfo> currRequest = this.node.requestBackup(replicaIds[i], fileContent);
+                    CompletableFuture<NodeInfo> currRequest = requester.request(replicaIds[i]);
                     futures.add(currRequest);
                 }
-            } catch (IOException | NoSuchAlgorithmException | ExecutionException | InterruptedException e) {
+            } catch (IOException | NoSuchAlgorithmException e) {
                 //continue
             }
         }
@@ -101,11 +223,107 @@ public class BackupManager {
 
     }
 
+    /**
+     * Places every replica first, without content. The nodes that asked for the content form a chain, in replica order,
+     * and the file is streamed once to the first of them, each node passing the chunks on to the next.
+     * Replicas that the chain did not store are then sent directly to the node that accepted them.
+     *
+     * @param replicaIds - replicas to place
+     * @param source     - file to back up
+     * @return one future per replica, resolved with the node storing it
+     */
+    private ArrayList<CompletableFuture<NodeInfo>> initChainBackupOperation(ReplicaIdentifier[] replicaIds, Path source) {
+        ArrayList<CompletableFuture<NodeInfo>> futures = new ArrayList<>(replicaIds.length);
+        ArrayList<CompletableFuture<ChordMessage>> placementResponses = new ArrayList<>(replicaIds.length);
+
+        SimpleNodeInfo self;
+        try {
+            self = new SimpleNodeInfo(this.node.getNodeInfo());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return futures;
+        }
+
+        for (ReplicaIdentifier replicaId : replicaIds) {
+            futures.add(new CompletableFuture<>());
+
+            SimpleNodeInfo location = this.node.getState().getReplicaLocation(replicaId);
+            if (location != null) {
+                placementResponses.add(CompletableFuture.completedFuture(new BackupConfirmMessage(location, replicaId)));
+            } else {
+                placementResponses.add(this.placements.submit(() -> this.node.findSuccessorCachedAsync(replicaId.getHash())
+                        .thenCompose(targetNode -> this.node.getCommunicator().request(toSimpleNodeInfo(targetNode), new BackupRequestMessage(self, self, replicaId, true)))));
+            }
+        }
+
+        CompletableFuture.allOf(placementResponses.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, placementFailure) -> {
+            LinkedHashMap<SimpleNodeInfo, List<ReplicaIdentifier>> chain = new LinkedHashMap<>();
+            HashMap<ReplicaIdentifier, ChordMessage> accepted = new HashMap<>();
+
+            for (int i = 0; i < replicaIds.length; i++) {
+                CompletableFuture<ChordMessage> response = placementResponses.get(i);
+
+                if (response.isCompletedExceptionally()) {
+                    pipe(response.thenApply(r -> (NodeInfo) null), futures.get(i));
+                } else if (response.join() instanceof BackupACKMessage) {
+                    chain.computeIfAbsent(((NodeInfoMessage) response.join()).getNode(), node -> new ArrayList<>()).add(replicaIds[i]);
+                    accepted.put(replicaIds[i], response.join());
+                } else {
+                    pipe(this.handleBackupRequestResponse(response.join(), null), futures.get(i));
+                }
+            }
+
+            if (chain.isEmpty()) return;
+
+            List<ChainHop> hops = new ArrayList<>();
+            chain.forEach((node, replicas) -> hops.add(new ChainHop(node, replicas)));
+
+            new ChunkStream(hops.get(0).getNode(), () -> ReplicaContent.open(source), (transferId, offset, data, last) ->
+                    new BackupChainChunkMessage(self, transferId, offset, data, last, hops)).send().whenComplete((result, chainFailure) -> {
+                HashSet<ReplicaIdentifier> stored = new HashSet<>();
+                if (result instanceof BackupChainResultMessage) {
+                    for (ChainHop hop : ((BackupChainResultMessage) result).getStored()) {
+                        stored.addAll(hop.getReplicaIds());
+                    }
+                }
+
+                for (int i = 0; i < replicaIds.length; i++) {
+                    ChordMessage acceptance = accepted.get(replicaIds[i]);
+                    if (acceptance == null) continue;
+
+                    if (stored.contains(replicaIds[i])) {
+                        futures.get(i).complete(toNodeInfo(((NodeInfoMessage) acceptance).getNode()));
+                    } else {
+                        ConsoleLogger.log(WARNING, "Replica " + replicaIds[i].getHash() + " was not stored by the chain, sending it directly");
+                        ReplicaIdentifier replicaId = replicaIds[i];
+                        pipe(this.handleBackupRequestResponse(acceptance, payloadTarget -> this.streamReplica(payloadTarget, self, replicaId, () -> ReplicaContent.open(source))), futures.get(i));
+                    }
+                }
+            });
+        });
+
+        return futures;
+    }
+
+    private static <T> void pipe(CompletableFuture<T> from, CompletableFuture<T> to) {
+        from.whenComplete((value, e) -> {
+            if (e != null) {
+                to.completeExceptionally(e);
+            } else {
+                to.complete(value);
+            }
+        });
+    }
+
     public void checkStoreReplica(BackupRequestMessage request) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
         try {
             BackupResponseMessage msg;
 
+            // a leaving peer takes no new replicas, it is handing its own off
+            if (this.node.isLeaving()) {
+                throw new NoSpaceException();
+            }
+
             if(this.node.getState().hasFileToStore(request.getReplicaId())){
                 msg = new BackupConfirmMessage(new SimpleNodeInfo(this.node.getNodeInfo()), request.getReplicaId());
                 this.node.getState().addReplica(request.getReplicaId());
@@ -114,31 +332,32 @@ public class BackupManager {
             }
 
             this.node.getState().setReplicaLocation(request.getReplicaId(), new SimpleNodeInfo(this.node.getNodeInfo()));
-            this.node.getCommunicator().send(Utils.createClientSocket(request.getResponseSocketInfo().address, request.getResponseSocketInfo().port), msg);
+            this.node.getState().sync();
+            this.node.getCommunicator().reply(request.getResponseSocketInfo(), request, msg);
         } catch (NoSpaceException e) {
 
             if(request.isOriginalRequest()){
 
-                SSLServerSocket successorRequestSocket = Network.createServerSocket(0);
-                successorRequestSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
-
-                BackupRequestMessage msg = new BackupRequestMessage(new SimpleNodeInfo(this.node.getNodeInfo().address, successorRequestSocket.getLocalPort()), new SimpleNodeInfo(this.node.getNodeInfo()), request.getReplicaId(), false);
+                BackupRequestMessage msg = new BackupRequestMessage(new SimpleNodeInfo(this.node.getNodeInfo()), new SimpleNodeInfo(this.node.getNodeInfo()), request.getReplicaId(), false);
 
-                CompletableFuture<ChordMessage> requestSuccessor = this.node.getCommunicator().async_listenOnSocket(successorRequestSocket);
-
-                this.node.getCommunicator().send(Utils.createClientSocket(this.node.getSuccessor().address, this.node.getSuccessor().port), msg);
-
-                ChordMessage successorResponse = requestSuccessor.get();
+                ChordMessage successorResponse;
+                try {
+                    successorResponse = this.node.getCommunicator().request(this.node.getNextPeer(), msg).get();
+                } catch (ExecutionException timeout) {
+                    successorResponse = new NotFoundMessage();
+                }
 
                 if(successorResponse instanceof BackupConfirmMessage || successorResponse instanceof BackupACKMessage){
                     this.node.getState().setReplicaLocation(request.getReplicaId(), ((NodeInfoMessage) successorResponse).getNode());
+                    this.node.getState().sync();
                 }
 
-                this.node.getCommunicator().send(Utils.createClientSocket(request.getResponseSocketInfo().address, request.getResponseSocketInfo().port), successorResponse);
+                this.node.getCommunicator().reply(request.getResponseSocketInfo(), request, successorResponse);
 
             }else {
                 BackupRequestMessage msg = new BackupRequestMessage(request.getResponseSocketInfo(), request.getOriginNode(), request.getReplicaId(), false);
-                this.node.getCommunicator().send(Utils.createClientSocket(this.node.getSuccessor().address, this.node.getSuccessor().port), msg);
+                msg.setRequestId(request.getRequestId());
+                this.node.getCommunicator().send(this.node.getNextPeer(), msg);
             }
 
 
@@ -148,40 +367,320 @@ public class BackupManager {
     public void storeReplica(BackupPayloadMessage backupPayloadMessage) throws IOException, ExecutionException, InterruptedException, NoSuchAlgorithmException {
         try {
             if (!this.node.getState().addReplica(backupPayloadMessage.getReplicaId())) {
-                Path directory = FileManager.getOrCreateDirectory("backup", Node.NODE_PATH);
-                FileManager.writeToFile(directory.resolve(String.valueOf(backupPayloadMessage.getReplicaId().getFileId().hashCode())).toString(), backupPayloadMessage.getData());
+                this.node.getReplicaStore().write(backupPayloadMessage.getReplicaId().getFileId(), backupPayloadMessage.getData());
             }
 
+            this.node.getState().sync();
+
             BackupConfirmMessage msg = new BackupConfirmMessage(new SimpleNodeInfo(this.node.getNodeInfo()), backupPayloadMessage.getReplicaId());
-            this.node.getCommunicator().send(Utils.createClientSocket(backupPayloadMessage.getResponseSocketInfo().address, backupPayloadMessage.getResponseSocketInfo().port), msg);
+            this.node.getCommunicator().reply(backupPayloadMessage.getResponseSocketInfo(), backupPayloadMessage, msg);
 
         }catch(NoSpaceException e){
             BackupNACKMessage msg = new BackupNACKMessage(new SimpleNodeInfo(this.node.getNodeInfo()), backupPayloadMessage.getReplicaId());
-            this.node.getCommunicator().send(Utils.createClientSocket(backupPayloadMessage.getResponseSocketInfo().address, backupPayloadMessage.getResponseSocketInfo().port), msg);
+            this.node.getCommunicator().reply(backupPayloadMessage.getResponseSocketInfo(), backupPayloadMessage, msg);
         }
     }
 
-    public void redistributeEligibleReplicas(NodeInfo otherNode) {
+    /**
+     * Writes one chunk of a streamed replica at its offset. The chunk at offset 0 checks for space and opens the transfer,
+     * every other chunk is acknowledged once written, and the last one moves the file into place and confirms the replica.
+     *
+     * @param chunk - received chunk
+     */
+    public void storeReplicaChunk(BackupChunkMessage chunk) throws IOException, ExecutionException, InterruptedException, NoSuchAlgorithmException {
+        SimpleNodeInfo self = new SimpleNodeInfo(this.node.getNodeInfo());
+        IncomingTransfer transfer = null;
 
-        this.node.getState().getReplicasLocation().forEach((replica, location) -> {
-            if(between(replica.hash, this.node.getNodeInfo().id, otherNode.id)) {
-                try {
-                    ConsoleLogger.log(Level.INFO, "Sending replica " + replica.getHash() + " to new predecessor " + otherNode.id);
+        try {
+            if (chunk.getOffset() == 0) {
+                transfer = this.openTransfer(chunk.getReplicaId(), chunk.getTransferId());
+            } else {
+                transfer = this.incomingTransfers.get(chunk.getTransferId());
+            }
 
-                    UpdateReplicaLocationMessage updateReplicaLocationInPredecessorMsg = new UpdateReplicaLocationMessage(replica, location);
+            if (transfer == null) {
+                ConsoleLogger.log(WARNING, "Received chunk of unknown or expired transfer " + chunk.getTransferId());
+                this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupNACKMessage(self, chunk.getReplicaId()));
+                return;
+            }
 
-                    this.node.getCommunicator().send(Utils.createClientSocket(otherNode.address, otherNode.port), updateReplicaLocationInPredecessorMsg);
+            transfer.write(chunk.getOffset(), chunk.getData());
 
-                    this.node.getState().removeReplicaLocation(replica);
+            if (!chunk.isLast()) {
+                this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupChunkACKMessage(chunk.getTransferId(), chunk.getOffset()));
+                return;
+            }
 
-                } catch (IOException e) {
-                    e.printStackTrace();
+            this.incomingTransfers.remove(chunk.getTransferId());
+            transfer.complete();
+            this.node.getState().addReplica(chunk.getReplicaId());
+            this.node.getState().sync();
+
+            this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupConfirmMessage(self, chunk.getReplicaId()));
+        } catch (NoSpaceException e) {
+            if (transfer != null) {
+                this.incomingTransfers.remove(chunk.getTransferId());
+                transfer.abort();
+            }
+            this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupNACKMessage(self, chunk.getReplicaId()));
+        } catch (IOException e) {
+            if (transfer != null) {
+                this.incomingTransfers.remove(chunk.getTransferId());
+                transfer.abort();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stores one chunk of a chain transfer and passes it on to the next hop. Chunks are acknowledged upstream once the
+     * rest of the chain acknowledged them, and the answer to the last one lists the replicas stored here and after here.
+     * If the next hop fails, the chain is cut there: later chunks are no longer passed on and the replicas after this
+     * node are missing from the result, so the origin can send them directly.
+     *
+     * @param chunk - received chunk, whose first hop is this node
+     */
+    public void storeChainChunk(BackupChainChunkMessage chunk) throws IOException, ExecutionException, InterruptedException, NoSuchAlgorithmException {
+        SimpleNodeInfo self = new SimpleNodeInfo(this.node.getNodeInfo());
+        List<ReplicaIdentifier> ownReplicas = chunk.getHops().get(0).getReplicaIds();
+        IncomingTransfer transfer = null;
+
+        try {
+            if (chunk.getOffset() == 0) {
+                transfer = this.openTransfer(ownReplicas.get(0), chunk.getTransferId());
+                transfer.setDownstream(chunk.getHops().subList(1, chunk.getHops().size()));
+            } else {
+                transfer = this.incomingTransfers.get(chunk.getTransferId());
+            }
+
+            if (transfer == null) {
+                ConsoleLogger.log(WARNING, "Received chunk of unknown or expired transfer " + chunk.getTransferId());
+                this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupNACKMessage(self, ownReplicas.get(0)));
+                return;
+            }
+
+            transfer.write(chunk.getOffset(), chunk.getData());
+        } catch (NoSpaceException e) {
+            this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, new BackupNACKMessage(self, ownReplicas.get(0)));
+            return;
+        } catch (IOException e) {
+            if (transfer != null) {
+                this.incomingTransfers.remove(chunk.getTransferId());
+                transfer.abort();
+            }
+            throw e;
+        }
+
+        final IncomingTransfer chainTransfer = transfer;
+        List<ChainHop> downstream = chainTransfer.getDownstream();
+
+        CompletableFuture<ChordMessage> downstreamAnswer = downstream.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : this.node.getCommunicator().request(downstream.get(0).getNode(),
+                new BackupChainChunkMessage(self, chunk.getTransferId(), chunk.getOffset(), chunk.getData(), chunk.isLast(), downstream));
+
+        if (!chunk.isLast()) {
+            downstreamAnswer.whenComplete((answer, e) -> {
+                if (e != null || (answer != null && !(answer instanceof BackupChunkACKMessage))) {
+                    ConsoleLogger.log(WARNING, "Replication chain cut after this node for transfer " + chunk.getTransferId());
+                    chainTransfer.setDownstream(Collections.emptyList());
                 }
+                this.replyInChain(chunk, new BackupChunkACKMessage(chunk.getTransferId(), chunk.getOffset()));
+            });
+            return;
+        }
+
+        this.incomingTransfers.remove(chunk.getTransferId());
+        chainTransfer.complete();
+
+        List<ReplicaIdentifier> storedHere = new ArrayList<>();
+        for (ReplicaIdentifier replicaId : ownReplicas) {
+            try {
+                this.node.getState().addReplica(replicaId);
+                storedHere.add(replicaId);
+            } catch (NoSpaceException e) {
+                ConsoleLogger.log(WARNING, "No space left for replica " + replicaId.getHash());
+            }
+        }
+        this.node.getState().sync();
+
+        downstreamAnswer.whenComplete((answer, e) -> {
+            List<ChainHop> stored = new ArrayList<>();
+            if (!storedHere.isEmpty()) {
+                stored.add(new ChainHop(self, storedHere));
+            }
+            if (answer instanceof BackupChainResultMessage) {
+                stored.addAll(((BackupChainResultMessage) answer).getStored());
+            }
+            this.replyInChain(chunk, new BackupChainResultMessage(stored));
+        });
+    }
+
+    private void replyInChain(BackupChainChunkMessage chunk, ChordMessage response) {
+        try {
+            this.node.getCommunicator().reply(chunk.getResponseSocketInfo(), chunk, response);
+        } catch (IOException e) {
+            ConsoleLogger.log(WARNING, "Could not answer previous node in replication chain: " + e.getMessage());
+        }
+    }
 
+    private IncomingTransfer openTransfer(ReplicaIdentifier replicaId, long transferId) throws NoSpaceException, IOException {
+        IncomingTransfer transfer;
+
+        if (this.node.getState().hasFileToStore(replicaId)) {
+            // The content is already here, the chunks only have to be acknowledged
+            transfer = new IncomingTransfer(null);
+        } else {
+            transfer = new IncomingTransfer(this.node.getReplicaStore().create(replicaId.getFileId(), transferId));
+        }
+
+        this.incomingTransfers.put(transferId, transfer);
+
+        return transfer;
+    }
+
+    /**
+     * Called periodically. Drops transfers whose sender stopped sending chunks.
+     */
+    private void expireTransfers() {
+        long now = System.currentTimeMillis();
+
+        this.incomingTransfers.forEach((transferId, transfer) -> {
+            if (now - transfer.getLastActivity() > TRANSFER_TIMEOUT_MS && this.incomingTransfers.remove(transferId, transfer)) {
+                ConsoleLogger.log(WARNING, "Dropping stalled transfer " + transferId);
+                transfer.abort();
             }
         });
     }
 
+    /**
+     * Hands the keys that now belong to the new predecessor over to it as one range. With REBALANCE_MODE "data", the
+     * replicas of the range stored here are first moved to it, so that restores find them at the key's owner instead
+     * of going through this node. Then the locations of the range are sent in batches, one batch in flight at a time,
+     * and each one is only forgotten here once its batch is acknowledged.
+     *
+     * @param otherNode - new predecessor of this node
+     */
+    public void redistributeEligibleReplicas(NodeInfo otherNode) {
+        ConcurrentHashMap<ReplicaIdentifier, SimpleNodeInfo> range = new ConcurrentHashMap<>();
+
+        this.node.getState().getReplicasLocation().forEachBetween(this.node.getNodeInfo().key, otherNode.key, (replica, location) -> {
+            // the peer's other positions share this state, and keep the locations of their own keys
+            if (!this.node.isOwnedBySibling(replica.getKey())) {
+                range.put(replica, location);
+            }
+        });
+
+        if (range.isEmpty()) return;
+
+        SimpleNodeInfo self, target;
+        try {
+            self = new SimpleNodeInfo(this.node.getNodeInfo());
+            target = new SimpleNodeInfo(otherNode);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            ConsoleLogger.log(SEVERE, "Could not hand replicas over to new predecessor " + otherNode.id);
+            return;
+        }
+
+        ConsoleLogger.log(INFO, "Handing " + range.size() + " replicas over to new predecessor " + otherNode.id);
+
+        CompletableFuture<Void> migration = REBALANCE_MODE.equals("data") && !target.samePeer(self)
+                ? this.migrateReplicas(range, self, target)
+                : CompletableFuture.completedFuture(null);
+
+        migration.thenCompose(ignored -> this.sendLocations(target, self, new ArrayList<>(range.entrySet()), ThreadLocalRandom.current().nextLong(), 0))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        ConsoleLogger.log(WARNING, "Could not hand every replica location over to " + otherNode.id + ", keeping the rest: " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Streams the replicas of the range stored on this peer to target, at most MAX_MIGRATIONS_IN_FLIGHT at a time.
+     * Each one moved is dropped here and its location in range updated. The ones target refuses stay here, and keep
+     * their location
+     *
+     * @return future completed once every migration finished, whether it succeeded or not
+     */
+    private CompletableFuture<Void> migrateReplicas(ConcurrentHashMap<ReplicaIdentifier, SimpleNodeInfo> range, SimpleNodeInfo self, SimpleNodeInfo target) {
+        ArrayList<CompletableFuture<Void>> migrations = new ArrayList<>();
+
+        range.forEach((replica, location) -> {
+            if (!location.samePeer(self) || !this.node.getState().hasReplica(replica) || !this.migrating.add(replica)) return;
+
+            migrations.add(this.migrations.submit(() -> this.streamReplica(target, self, replica, this.storedContent(replica)))
+                    .thenAccept(response -> {
+                        if (!(response instanceof BackupConfirmMessage)) {
+                            ConsoleLogger.log(WARNING, "Node at " + target.address + ":" + target.port + " did not take replica " + replica.getHash() + ", keeping it");
+                            return;
+                        }
+
+                        range.put(replica, target);
+                        this.node.getState().setReplicaLocation(replica, target);
+                        this.node.getState().deleteReplica(replica);
+
+                        if (!this.node.getState().hasFileReplicas(replica.getFileId())) {
+                            try {
+                                this.node.getReplicaStore().delete(replica.getFileId());
+                            } catch (IOException e) {
+                                ConsoleLogger.log(WARNING, "Could not delete the local copy of " + replica.getFileId().getFileName());
+                            }
+                        }
+                    })
+                    .exceptionally(e -> {
+                        ConsoleLogger.log(WARNING, "Could not move replica " + replica.getHash() + ": " + e.getMessage());
+                        return null;
+                    })
+                    .whenComplete((ignored, e) -> this.migrating.remove(replica)));
+        });
+
+        return CompletableFuture.allOf(migrations.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Sends the locations from offset on, RANGE_BATCH_SIZE per message, each batch once the previous one is acknowledged
+     */
+    private CompletableFuture<Void> sendLocations(SimpleNodeInfo target, SimpleNodeInfo self, List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> locations, long transferId, int offset) {
+        if (offset >= locations.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> batch = locations.subList(offset, Math.min(offset + RANGE_BATCH_SIZE, locations.size()));
+
+        LinkedHashMap<ReplicaIdentifier, SimpleNodeInfo> entries = new LinkedHashMap<>();
+        for (Map.Entry<ReplicaIdentifier, SimpleNodeInfo> location : batch) {
+            entries.put(location.getKey(), location.getValue());
+        }
+
+        return this.node.getCommunicator().request(target, new ReplicaRangeMessage(self, transferId, offset, entries))
+                .thenComposeAsync(response -> {
+                    if (!(response instanceof BackupChunkACKMessage)) {
+                        return CompletableFuture.failedFuture(new Exception("Received non-supported message answering to replica range"));
+                    }
+
+                    // a location that changed meanwhile is newer than the one sent, so it stays
+                    entries.forEach((replica, location) -> this.node.getState().removeReplicaLocation(replica, location));
+
+                    return this.sendLocations(target, self, locations, transferId, offset + batch.size());
+                }, this.node.getExecutor());
+    }
+
+    /**
+     * Records the locations of a range this node became responsible for
+     *
+     * @param range - one batch of the range, from its previous owner
+     */
+    public void takeOverRange(ReplicaRangeMessage range) throws IOException {
+        range.getLocations().forEach((replica, location) -> this.node.getState().setReplicaLocation(replica, location));
+        // the previous owner forgets these locations once they are acknowledged
+        this.node.getState().sync();
+
+        ConsoleLogger.log(INFO, "Took over " + range.getLocations().size() + " replica locations from node at " + range.getResponseSocketInfo().address + ":" + range.getResponseSocketInfo().port);
+
+        this.node.getCommunicator().reply(range.getResponseSocketInfo(), range, new BackupChunkACKMessage(range.getTransferId(), range.getOffset()));
+    }
+
     public String state() throws RemoteException {
         return this.node.getState().toString();
     }
@@ -218,84 +717,286 @@ public class BackupManager {
 
 
     public Integer getDesiredFileRepDegreeOfFile(FileIdentifier fileId) {
-        return this.desiredFileRepDegree.get(fileId);
+        return this.node.getState().getDesiredRepDegree(fileId);
     }
 
-    public ConcurrentHashMap<FileIdentifier, Integer> getDesiredFileRepDegrees() {
-        return this.desiredFileRepDegree;
+    /**
+     * @return the code the file was backed up with, or null if it was not backed up as fragments
+     */
+    public ReedSolomon getErasureCode(FileIdentifier fileId) {
+        return this.node.getState().getErasureCode(fileId);
     }
 
-    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, byte[] fileContent, NodeInfo targetNode) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        SSLServerSocket tempSocket = Network.createServerSocket(0);
-        tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, byte[] fileContent) throws IOException, NoSuchAlgorithmException {
+        SimpleNodeInfo self = new SimpleNodeInfo(this.node.getNodeInfo());
 
-        BackupRequestMessage msg = new BackupRequestMessage(
-                new SimpleNodeInfo(this.node.getNodeInfo().address, tempSocket.getLocalPort()),
-                new SimpleNodeInfo(this.node.getNodeInfo().address, this.node.getNodeInfo().port),
-                replicaId,
-                true);
+        return this.placeReplica(replicaId, self, payloadTarget ->
+                this.node.getCommunicator().request(payloadTarget, new BackupPayloadMessage(self, replicaId, fileContent)));
+    }
 
-        CompletableFuture<ChordMessage> request = this.node.getCommunicator().async_listenOnSocket(tempSocket);
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, Path source) throws IOException, NoSuchAlgorithmException {
+        SimpleNodeInfo self = new SimpleNodeInfo(this.node.getNodeInfo());
 
-        this.node.getCommunicator().send(Utils.createClientSocket(targetNode.address, targetNode.port), msg);
+        return this.placeReplica(replicaId, self, payloadTarget -> this.streamReplica(payloadTarget, self, replicaId, () -> ReplicaContent.open(source)));
+    }
 
-        ConsoleLogger.log(Level.SEVERE, "I want to save file with key " + replicaId.getHash());
-        ConsoleLogger.log(Level.SEVERE, "Sent backup request for node at " + targetNode.address + ":" + targetNode.port);
+    /**
+     * Places again a replica stored on this node, streaming its content from the replica store
+     */
+    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException {
+        SimpleNodeInfo self = new SimpleNodeInfo(this.node.getNodeInfo());
 
+        return this.placeReplica(replicaId, self, payloadTarget -> this.streamReplica(payloadTarget, self, replicaId, this.storedContent(replicaId)));
+    }
 
-        ChordMessage backupRequestResponse = request.get();
+    private ContentSource storedContent(ReplicaIdentifier replicaId) {
+        return () -> this.node.getReplicaStore().open(replicaId.getFileId());
+    }
 
-        CompletableFuture<NodeInfo> ret = new CompletableFuture<>();
+    private CompletableFuture<ChordMessage> streamReplica(SimpleNodeInfo payloadTarget, SimpleNodeInfo self, ReplicaIdentifier replicaId, ContentSource source) {
+        return new ChunkStream(payloadTarget, source, (transferId, offset, data, last) ->
+                new BackupChunkMessage(self, replicaId, transferId, offset, data, last)).send();
+    }
 
+    /**
+     * Places one replica as a chain of non-blocking stages: successor lookup, backup request, and payload transfer if
+     * the chosen node asks for the content. At most MAX_PLACEMENTS_IN_FLIGHT placements run at once, across all files,
+     * and the others start as those finish.
+     *
+     * @param replicaId     - replica to place
+     * @param self          - this node, where the answers are sent
+     * @param payloadSender - sends the content once a node accepts the replica
+     * @return future resolved with the node storing the replica
+     */
+    private CompletableFuture<NodeInfo> placeReplica(ReplicaIdentifier replicaId, SimpleNodeInfo self, PayloadSender payloadSender) {
+        return this.placements.submit(() -> this.node.findSuccessorCachedAsync(replicaId.getHash())
+                .thenCompose(targetNode -> {
+                    ConsoleLogger.log(Level.SEVERE, "I want to save file with key " + replicaId.getHash());
+                    ConsoleLogger.log(Level.SEVERE, "Sent backup request for node at " + targetNode.address + ":" + targetNode.port);
+
+                    return this.node.getCommunicator().request(toSimpleNodeInfo(targetNode), new BackupRequestMessage(self, self, replicaId, true));
+                })
+                .thenCompose(response -> this.handleBackupRequestResponse(response, payloadSender)));
+    }
 
+    private CompletableFuture<NodeInfo> handleBackupRequestResponse(ChordMessage backupRequestResponse, PayloadSender payloadSender) {
         if (backupRequestResponse instanceof BackupACKMessage) {
             SimpleNodeInfo payloadTarget = ((NodeInfoMessage) backupRequestResponse).getNode();
 
-            SSLServerSocket payloadResponseSocket = Network.createServerSocket(0);
-            payloadResponseSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
-
-            BackupPayloadMessage payloadMsg = new BackupPayloadMessage(new SimpleNodeInfo(this.node.getNodeInfo().address, payloadResponseSocket.getLocalPort()), replicaId, fileContent);
-
-            CompletableFuture<ChordMessage> payloadResponse = this.node.getCommunicator().async_listenOnSocket(payloadResponseSocket);
-
-            this.node.getCommunicator().send(Utils.createClientSocket(payloadTarget.address, payloadTarget.port), payloadMsg);
-
-            ChordMessage payloadResponseMessage = payloadResponse.get();
-
-
-            if (payloadResponseMessage instanceof BackupNACKMessage) {
-                ConsoleLogger.log(SEVERE, "Failed to store replica of file!");
-                ret.complete(new NodeInfo(((NodeInfoMessage) backupRequestResponse).getNode()));
-            } else if (payloadResponseMessage instanceof BackupConfirmMessage) {
-                ret.complete(new NodeInfo(((NodeInfoMessage) payloadResponseMessage).getNode()));
-            }
+            return payloadSender.send(payloadTarget).thenApply(payloadResponseMessage -> {
+                if (payloadResponseMessage instanceof BackupNACKMessage) {
+                    ConsoleLogger.log(SEVERE, "Failed to store replica of file!");
+                    return toNodeInfo(payloadTarget);
+                } else if (payloadResponseMessage instanceof BackupConfirmMessage) {
+                    return toNodeInfo(((NodeInfoMessage) payloadResponseMessage).getNode());
+                }
+                throw new CompletionException(new Exception("Received non-supported message answering to backup payload"));
+            });
         } else if (backupRequestResponse instanceof BackupNACKMessage) {
 
             ConsoleLogger.log(SEVERE, "No peer had enough space to store file!");
 
-            ret.completeExceptionally(new NoSpaceException());
+            return CompletableFuture.failedFuture(new NoSpaceException());
         } else if (backupRequestResponse instanceof BackupConfirmMessage) {
-            ret.complete(new NodeInfo(((NodeInfoMessage) backupRequestResponse).getNode()));
-        } else {
-            ret.completeExceptionally(new Exception("Received non-supported message answering to backup request"));
+            return CompletableFuture.completedFuture(toNodeInfo(((NodeInfoMessage) backupRequestResponse).getNode()));
         }
 
-        return ret;
+        return CompletableFuture.failedFuture(new Exception("Received non-supported message answering to backup request"));
     }
 
-    public CompletableFuture<NodeInfo> requestBackup(ReplicaIdentifier replicaId, byte[] fileContent) throws InterruptedException, ExecutionException, NoSuchAlgorithmException, IOException {
-        NodeInfo targetNode = this.node.findSuccessor(replicaId.getHash());
+    private static NodeInfo toNodeInfo(SimpleNodeInfo node) {
+        try {
+            return new NodeInfo(node);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new CompletionException(e);
+        }
+    }
 
-        return requestBackup(replicaId, fileContent, targetNode);
+    private static SimpleNodeInfo toSimpleNodeInfo(NodeInfo node) {
+        try {
+            return new SimpleNodeInfo(node);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static byte[] readChunk(ReplicaContent content, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            if (content.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("File shrank while being backed up");
+            }
+        }
+
+        return buffer.array();
     }
 
     public void handleBackupRequest(BackupRequestMessage request) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
-        if (new NodeInfo(request.getOriginNode()).id.equals(this.node.getNodeInfo().id) && !request.isOriginalRequest()) {
-            this.node.getCommunicator().send(Utils.createClientSocket(request.getResponseSocketInfo().address, request.getResponseSocketInfo().port),
+        // the request went around the ring back to the peer that first had no space
+        if (request.getOriginNode().samePeer(new SimpleNodeInfo(this.node.getNodeInfo())) && !request.isOriginalRequest()) {
+            this.node.getCommunicator().reply(request.getResponseSocketInfo(), request,
                     new BackupNACKMessage(request.getResponseSocketInfo(), request.getReplicaId()));
 
             return;
         }
         this.checkStoreReplica(request);
     }
+
+    private interface ReplicaRequester {
+        CompletableFuture<NodeInfo> request(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException;
+    }
+
+    private interface PayloadSender {
+        CompletableFuture<ChordMessage> send(SimpleNodeInfo payloadTarget);
+    }
+
+    private interface ContentSource {
+        ReplicaContent open() throws IOException;
+    }
+
+    private interface ChunkMessageFactory {
+        ChordMessage create(long transferId, long offset, byte[] data, boolean last);
+    }
+
+    /**
+     * Sends the content of a file to payloadTarget in chunks of CHUNK_SIZE_BYTES without blocking. Chunks are sent until
+     * CHUNK_WINDOW of them are unacknowledged and the next ones go out as acknowledgements arrive, so only that many
+     * chunks are ever held in memory regardless of the file size.
+     */
+    private class ChunkStream {
+
+        private final SimpleNodeInfo payloadTarget;
+        private final ContentSource source;
+        private final ChunkMessageFactory chunks;
+        private final long transferId;
+        private final ArrayDeque<CompletableFuture<ChordMessage>> inFlight;
+
+        private ReplicaContent content;
+        private long offset = 0;
+
+        ChunkStream(SimpleNodeInfo payloadTarget, ContentSource source, ChunkMessageFactory chunks) {
+            this.payloadTarget = payloadTarget;
+            this.source = source;
+            this.chunks = chunks;
+            this.transferId = ThreadLocalRandom.current().nextLong();
+            this.inFlight = new ArrayDeque<>();
+        }
+
+        /**
+         * @return future resolved with the receiver's answer to the last chunk, or the first answer that was not an acknowledgement
+         */
+        CompletableFuture<ChordMessage> send() {
+            try {
+                this.content = this.source.open();
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+
+            return this.sendMore().whenComplete((response, e) -> {
+                try {
+                    this.content.close();
+                } catch (IOException closeException) {
+                    // nothing left to read
+                }
+            });
+        }
+
+        private CompletableFuture<ChordMessage> sendMore() {
+            try {
+                long size = this.content.size();
+
+                while (true) {
+                    int length = (int) Math.min(CHUNK_SIZE_BYTES, size - this.offset);
+                    byte[] data = readChunk(this.content, this.offset, length);
+
+                    if (this.offset + length >= size) {
+                        ChordMessage last = this.chunks.create(this.transferId, this.offset, data, true);
+
+                        // Every earlier chunk has to be written before the receiver moves the file into place
+                        return this.awaitAcks(0).thenCompose(failure -> failure != null
+                                ? CompletableFuture.completedFuture(failure)
+                                : node.getCommunicator().request(this.payloadTarget, last));
+                    }
+
+                    this.inFlight.add(node.getCommunicator().request(this.payloadTarget, this.chunks.create(this.transferId, this.offset, data, false)));
+
+                    // The first chunk opens the transfer on the receiver, so it is acknowledged before any other is sent
+                    int maxInFlight = this.offset == 0 ? 0 : CHUNK_WINDOW - 1;
+                    this.offset += length;
+
+                    if (this.inFlight.size() > maxInFlight) {
+                        // Continues on the executor so that a long run of already acknowledged chunks does not grow the stack
+                        return this.awaitAcks(maxInFlight).thenComposeAsync(failure -> failure != null
+                                ? CompletableFuture.completedFuture(failure)
+                                : this.sendMore(), node.getExecutor());
+                    }
+                }
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * @return future resolved with the first answer that is not a BackupChunkACKMessage, or with null once no more
+         * than maxInFlight chunks are unacknowledged
+         */
+        private CompletableFuture<ChordMessage> awaitAcks(int maxInFlight) {
+            if (this.inFlight.size() <= maxInFlight) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            return this.inFlight.poll().thenCompose(response -> response instanceof BackupChunkACKMessage
+                    ? this.awaitAcks(maxInFlight)
+                    : CompletableFuture.completedFuture(response));
+        }
+    }
+
+    /**
+     * Replica being received in chunks, written through a writer of the replica store that only makes it visible once
+     * the last chunk arrives. Without a writer the chunks are acknowledged and discarded.
+     */
+    private static class IncomingTransfer {
+
+        private final ReplicaStore.ReplicaWriter writer;
+        private volatile long lastActivity;
+        // Rest of the replication chain, for transfers received along one
+        private volatile List<ChainHop> downstream = Collections.emptyList();
+
+        IncomingTransfer(ReplicaStore.ReplicaWriter writer) {
+            this.writer = writer;
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        void write(long offset, byte[] data) throws IOException {
+            this.lastActivity = System.currentTimeMillis();
+            if (this.writer == null) return;
+
+            this.writer.write(offset, data);
+        }
+
+        void complete() throws IOException {
+            if (this.writer == null) return;
+
+            this.writer.complete();
+        }
+
+        void abort() {
+            if (this.writer == null) return;
+
+            this.writer.abort();
+        }
+
+        long getLastActivity() {
+            return this.lastActivity;
+        }
+
+        List<ChainHop> getDownstream() {
+            return this.downstream;
+        }
+
+        void setDownstream(List<ChainHop> downstream) {
+            this.downstream = downstream;
+        }
+    }
 }
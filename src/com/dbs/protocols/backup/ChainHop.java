@@ -0,0 +1,28 @@
+package com.dbs.protocols.backup;
+
+import com.dbs.chord.SimpleNodeInfo;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * One node of a replication chain and the replicas of the file it stores
+ */
+public class ChainHop implements Serializable {
+
+    private final SimpleNodeInfo node;
+    private final List<ReplicaIdentifier> replicaIds;
+
+    public ChainHop(SimpleNodeInfo node, List<ReplicaIdentifier> replicaIds) {
+        this.node = node;
+        this.replicaIds = replicaIds;
+    }
+
+    public SimpleNodeInfo getNode() {
+        return node;
+    }
+
+    public List<ReplicaIdentifier> getReplicaIds() {
+        return replicaIds;
+    }
+}
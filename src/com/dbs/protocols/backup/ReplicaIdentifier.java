@@ -22,6 +22,13 @@ public class ReplicaIdentifier implements Serializable {
         return hash;
     }
 
+    /**
+     * @return hash as an unsigned long, the form used for routing
+     */
+    public long getKey() {
+        return hash.longValue();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -33,6 +40,7 @@ public class ReplicaIdentifier implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(hash);
+        // the hash is below 2^64, so its low 64 bits are all of it
+        return Long.hashCode(this.hash.longValue());
     }
 }
@@ -3,26 +3,22 @@ package com.dbs.protocols.delete;
 import com.dbs.chord.Node;
 import com.dbs.chord.NodeInfo;
 import com.dbs.chord.SimpleNodeInfo;
-import com.dbs.chord.Utils;
 import com.dbs.filemanager.FileManager;
+import com.dbs.filemanager.ReedSolomon;
 import com.dbs.network.messages.ChordMessage;
 import com.dbs.network.messages.DeleteConfirmationMessage;
 import com.dbs.network.messages.DeleteReplicaMessage;
 import com.dbs.network.messages.NotFoundMessage;
 import com.dbs.protocols.backup.FileIdentifier;
 import com.dbs.protocols.backup.ReplicaIdentifier;
-import com.dbs.utils.Network;
 
-import javax.net.ssl.SSLServerSocket;
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
-import static com.dbs.chord.Node.REQUEST_TIMEOUT_MS;
 
 public class DeleteManager {
 
@@ -40,12 +36,19 @@ public class DeleteManager {
         try {
             FileIdentifier fileId = FileIdentifier.fromPath(file);
 
+            ReedSolomon erasureCode = this.node.getBackupManager().getErasureCode(fileId);
 
-            if (this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId) == null) {
+            ReplicaIdentifier[] replicaIds;
+
+            if (erasureCode != null) {
+                replicaIds = FileManager.generateFragmentIds(fileId, erasureCode.getTotalFragments(), erasureCode.fragmentSize(fileId.getFileSize()));
+            } else if (this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId) == null) {
                 return "File is not backed up";
+            } else {
+                replicaIds = FileManager.generateReplicaIds(fileId, this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId));
             }
 
-            ReplicaIdentifier[] replicaIds = FileManager.generateReplicaIds(fileId, this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId));
+            this.node.prefetchSuccessors(replicaIds);
 
             ArrayList<CompletableFuture<NodeInfo>> futures = new ArrayList<>();
 
@@ -64,7 +67,7 @@ public class DeleteManager {
                 }
             }
 
-            this.node.getBackupManager().getDesiredFileRepDegrees().computeIfPresent(fileId, (k, _v) -> this.node.getBackupManager().getDesiredFileRepDegrees().remove(k));
+            this.node.getState().forgetBackedUpFile(fileId);
 
         } catch (IOException | NoSuchAlgorithmException e) {
             return "Failed to generate replica ids";
@@ -80,21 +83,17 @@ public class DeleteManager {
 
         try {
 
-            SSLServerSocket tempSocket = Network.createServerSocket(0);
-            tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
-
-            NodeInfo targetNode = this.node.findSuccessor(replicaId.getHash());
-
-            CompletableFuture<ChordMessage> future = this.node.getCommunicator().async_listenOnSocket(tempSocket);
+            NodeInfo targetNode = this.node.findSuccessorCached(replicaId.getHash());
 
-            DeleteReplicaMessage msg = new DeleteReplicaMessage(new SimpleNodeInfo(this.node.getNodeInfo().address, tempSocket.getLocalPort()), replicaId);
+            DeleteReplicaMessage msg = new DeleteReplicaMessage(new SimpleNodeInfo(this.node.getNodeInfo()), replicaId);
 
-            this.node.getCommunicator().send(Utils.createClientSocket(targetNode.address, targetNode.port), msg);
+            CompletableFuture<ChordMessage> future = this.node.getCommunicator().request(targetNode, msg);
 
             ChordMessage response = future.get();
 
 
             if(response instanceof NotFoundMessage){
+                this.node.getLookupCache().invalidate(replicaId.getKey());
                 result.completeExceptionally(new Exception("Could not find file to delete!"));
                 return result;
             }
@@ -113,24 +112,22 @@ public class DeleteManager {
             if(this.node.getState().deleteReplica(msg.getReplicaId())){
 
                 if(!this.node.getState().hasFileReplicas(msg.getReplicaId().getFileId())) {
-                    FileManager.deleteFile(Paths.get(
-                            Node.NODE_PATH,
-                            "backup",
-                            String.valueOf(msg.getReplicaId().getFileId().hashCode())).toString());
+                    this.node.getReplicaStore().delete(msg.getReplicaId().getFileId());
                 }
 
                 DeleteConfirmationMessage confirmation = new DeleteConfirmationMessage(new SimpleNodeInfo(this.node.getNodeInfo()));
 
                 this.node.getState().removeReplicaLocation(msg.getReplicaId());
 
-                this.node.getCommunicator().send(Utils.createClientSocket(msg.getNode().address, msg.getNode().port), confirmation);
+                this.node.getCommunicator().reply(msg.getNode(), msg, confirmation);
 
             }else if(this.node.getState().hasReplicaLocation(msg.getReplicaId())){
-                SimpleNodeInfo targetNode = this.node.getState().getReplicasLocation().get(msg.getReplicaId());
+                SimpleNodeInfo targetNode = this.node.getState().getReplicaLocation(msg.getReplicaId());
 
                 DeleteReplicaMessage nextMsg = new DeleteReplicaMessage(msg.getNode(), msg.getReplicaId());
+                nextMsg.setRequestId(msg.getRequestId());
 
-                this.node.getCommunicator().send(Utils.createClientSocket(targetNode.address, targetNode.port), nextMsg);
+                this.node.getCommunicator().send(targetNode, nextMsg);
 
                 this.node.getState().removeReplicaLocation(msg.getReplicaId());
 
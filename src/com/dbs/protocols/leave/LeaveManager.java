@@ -0,0 +1,200 @@
+package com.dbs.protocols.leave;
+
+import com.dbs.chord.Node;
+import com.dbs.chord.NodeInfo;
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.network.messages.UpdateReplicaLocationMessage;
+import com.dbs.protocols.backup.FileIdentifier;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+import com.dbs.utils.ConsoleLogger;
+
+import java.io.IOException;
+import java.rmi.RemoteException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Takes a peer out of the ring in order: all its ring positions leave, its replicas are placed again through the
+ * usual backup path, which now leads to the nodes that took over its keys, the replica locations it kept are sent to
+ * the nodes now responsible for them, and only then the process exits. Hand-offs that fail are retried, and if some
+ * still fail the process keeps running, out of the ring, so that nothing it holds is lost and LEAVE can be run again.
+ */
+public class LeaveManager {
+
+    // Time for the answer to the LEAVE command to reach the client before the process exits
+    private static final int EXIT_DELAY_MS = 500;
+    // Times the replicas and locations that could not be handed off are tried again before giving up on exiting
+    private static final int HANDOFF_RETRIES = Integer.getInteger("dbs.leave.handOffRetries", 3);
+    private static final int HANDOFF_RETRY_DELAY_MS = 2000;
+
+    private final Node node;
+
+    public LeaveManager(Node node) {
+        this.node = node;
+    }
+
+    public String leave() throws RemoteException {
+        StringBuilder retMsg = new StringBuilder();
+
+        SimpleNodeInfo self;
+        boolean alone;
+        try {
+            self = new SimpleNodeInfo(this.node.getNodeInfo());
+            alone = new SimpleNodeInfo(this.node.getNextPeer()).samePeer(self);
+
+            // positions that left on an earlier LEAVE whose hand-off failed are already out of the ring
+            for (Node position : this.node.getCommunicator().getVirtualNodes()) {
+                if (!position.isLeaving()) position.leave();
+            }
+        } catch (IOException | NoSuchAlgorithmException | ExecutionException | InterruptedException e) {
+            throw new RemoteException("Could not leave the ring", e);
+        }
+
+        if (alone) {
+            retMsg.append("No other peer in the ring, stored replicas are lost.\n");
+        } else {
+            int failedReplicas;
+            List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> failedLocations;
+            int retries = 0;
+
+            try {
+                failedReplicas = this.handOffReplicas(retMsg);
+                failedLocations = this.handOffLocations(retMsg, self);
+
+                while (retries < HANDOFF_RETRIES && (failedReplicas > 0 || !failedLocations.isEmpty())) {
+                    retries++;
+                    Thread.sleep(HANDOFF_RETRY_DELAY_MS);
+                    ConsoleLogger.log(Level.INFO, "Retrying the hand-off of " + failedReplicas + " replicas and "
+                            + failedLocations.size() + " replica locations");
+
+                    failedReplicas = this.retryReplicas();
+                    failedLocations = this.sendLocations(failedLocations);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RemoteException("Interrupted while handing off replicas", e);
+            }
+
+            if (failedReplicas > 0 || !failedLocations.isEmpty()) {
+                ConsoleLogger.log(Level.SEVERE, "Not exiting, " + failedReplicas + " replicas and " + failedLocations.size()
+                        + " replica locations could not be handed off");
+                return retMsg.append("Could not hand off ").append(failedReplicas).append(" replicas and ")
+                        .append(failedLocations.size()).append(" replica locations, so this peer keeps running out of")
+                        .append(" the ring. Run LEAVE again to retry.\n").toString();
+            }
+            if (retries > 0) {
+                retMsg.append("Handed off the rest after ").append(retries).append(" retries.\n");
+            }
+        }
+
+        this.node.getThreadPool().schedule(() -> {
+            this.node.getDbsAdapter().unbind();
+            System.exit(0);
+        }, EXIT_DELAY_MS, TimeUnit.MILLISECONDS);
+
+        return retMsg.append("Left the ring.\n").toString();
+    }
+
+    /**
+     * Streams every stored replica to the node now responsible for it, and drops the local copy once it is stored there
+     *
+     * @return how many replicas could not be handed off
+     */
+    private int handOffReplicas(StringBuilder retMsg) throws InterruptedException {
+        int stored = this.node.getState().getLocalReplicas().size();
+        int failed = this.retryReplicas();
+
+        retMsg.append("Handed off ").append(stored - failed).append(" of ").append(stored).append(" stored replicas.\n");
+        return failed;
+    }
+
+    /**
+     * Handed off replicas are dropped from the state, so every call only handles the ones still stored here
+     *
+     * @return how many replicas could not be handed off
+     */
+    private int retryReplicas() throws InterruptedException {
+        ArrayList<ReplicaIdentifier> replicas = this.node.getState().getLocalReplicas();
+        this.node.prefetchSuccessors(replicas.toArray(new ReplicaIdentifier[0]));
+
+        ArrayList<CompletableFuture<NodeInfo>> futures = new ArrayList<>(replicas.size());
+        for (ReplicaIdentifier replica : replicas) {
+            try {
+                futures.add(this.node.requestBackup(replica));
+            } catch (IOException | NoSuchAlgorithmException e) {
+                futures.add(CompletableFuture.failedFuture(e));
+            }
+        }
+
+        HashSet<FileIdentifier> handedOff = new HashSet<>();
+        int failed = 0;
+
+        for (int i = 0; i < replicas.size(); i++) {
+            try {
+                NodeInfo holder = futures.get(i).get();
+                ConsoleLogger.log(Level.INFO, "Handed replica " + replicas.get(i).getHash() + " off to node " + holder.id);
+
+                this.node.getState().deleteReplica(replicas.get(i));
+                handedOff.add(replicas.get(i).getFileId());
+            } catch (ExecutionException e) {
+                ConsoleLogger.log(Level.SEVERE, "Could not hand replica " + replicas.get(i).getHash() + " off: " + e.getMessage());
+                failed++;
+            }
+        }
+
+        for (FileIdentifier fileId : handedOff) {
+            if (this.node.getState().hasFileReplicas(fileId)) continue;
+
+            try {
+                this.node.getReplicaStore().delete(fileId);
+            } catch (IOException e) {
+                ConsoleLogger.log(Level.WARNING, "Could not delete the local copy of " + fileId.getFileName());
+            }
+        }
+
+        return failed;
+    }
+
+    /**
+     * Sends the replica locations this peer kept to the nodes now responsible for them. Locations on this peer are
+     * left out, as the replicas they point to were just placed again, which recorded their new location
+     *
+     * @return the locations that could not be handed off
+     */
+    private List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> handOffLocations(StringBuilder retMsg, SimpleNodeInfo self) throws InterruptedException {
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> locations = this.node.getState().getReplicasLocation().entries();
+        locations.removeIf(entry -> entry.getValue().samePeer(self));
+
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> failed = this.sendLocations(locations);
+
+        retMsg.append("Handed off ").append(locations.size() - failed.size()).append(" of ").append(locations.size())
+                .append(" replica locations.\n");
+        return failed;
+    }
+
+    /**
+     * @return the locations that could not be sent
+     */
+    private List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> sendLocations(List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> locations) throws InterruptedException {
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> failed = new ArrayList<>();
+
+        for (Map.Entry<ReplicaIdentifier, SimpleNodeInfo> entry : locations) {
+            try {
+                NodeInfo owner = this.node.findSuccessorCached(entry.getKey().getHash());
+                this.node.getCommunicator().send(owner, new UpdateReplicaLocationMessage(entry.getKey(), entry.getValue()));
+            } catch (IOException | NoSuchAlgorithmException | ExecutionException e) {
+                ConsoleLogger.log(Level.SEVERE, "Could not hand the location of replica " + entry.getKey().getHash() + " off: " + e.getMessage());
+                failed.add(entry);
+            }
+        }
+
+        return failed;
+    }
+}
@@ -2,20 +2,16 @@ package com.dbs.protocols.reclaim;
 
 import com.dbs.chord.Node;
 import com.dbs.chord.NodeInfo;
-import com.dbs.filemanager.FileManager;
 import com.dbs.protocols.backup.FileIdentifier;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.utils.ConsoleLogger;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 
@@ -40,12 +36,8 @@ public class ReclaimManager {
         for(ReplicaIdentifier replica : replicasToDelete){
             if(!filesToDelete.containsKey(replica.getFileId())){
                 try {
-                    filesToDelete.put(replica.getFileId(),
-                            FileManager.readFromFile(Paths.get(
-                                    Node.NODE_PATH,
-                                    "backup",
-                                    String.valueOf(replica.getFileId().hashCode())).toString()));
-                } catch (ExecutionException | InterruptedException | FileNotFoundException e) {
+                    filesToDelete.put(replica.getFileId(), this.node.getReplicaStore().read(replica.getFileId()));
+                } catch (IOException e) {
                     return "Could not find file " + replica.getFileId().getFileName() + " with hash " + replica.getFileId().hashCode();
                 }
             }
@@ -53,10 +45,7 @@ public class ReclaimManager {
 
         for(FileIdentifier file : filesToDelete.keySet()){
             try {
-                FileManager.deleteFile(Paths.get(
-                        Node.NODE_PATH,
-                        "backup",
-                        String.valueOf(file.hashCode())).toString());
+                this.node.getReplicaStore().delete(file);
             } catch (IOException e) {
                 return "Could not delete file " + file.getFileName() + " with hash " + file.hashCode();
             }
@@ -68,7 +57,7 @@ public class ReclaimManager {
             try {
                 CompletableFuture<NodeInfo> future = this.node.requestBackup(replica, filesToDelete.get(replica.getFileId()));
                 futures.add(future);
-            } catch (IOException | NoSuchAlgorithmException | ExecutionException | InterruptedException e) {
+            } catch (IOException | NoSuchAlgorithmException e) {
                 e.printStackTrace();
             }
         }
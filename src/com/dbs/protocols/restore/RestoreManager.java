@@ -3,36 +3,51 @@ package com.dbs.protocols.restore;
 import com.dbs.chord.Node;
 import com.dbs.chord.NodeInfo;
 import com.dbs.chord.SimpleNodeInfo;
-import com.dbs.chord.Utils;
+import com.dbs.filemanager.BufferPool;
 import com.dbs.filemanager.FileManager;
+import com.dbs.filemanager.ReedSolomon;
+import com.dbs.filemanager.ReplicaContent;
 import com.dbs.network.messages.*;
 import com.dbs.protocols.backup.FileIdentifier;
 import com.dbs.protocols.backup.ReplicaIdentifier;
 import com.dbs.utils.ConsoleLogger;
-import com.dbs.utils.Network;
 
-import javax.net.ssl.SSLServerSocket;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import static com.dbs.chord.Node.NODE_PATH;
-import static com.dbs.chord.Node.REQUEST_TIMEOUT_MS;
-import static com.dbs.chord.Utils.createClientSocket;
+import static java.nio.file.StandardOpenOption.*;
 import static java.util.logging.Level.INFO;
 import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
 
 public class RestoreManager {
 
+    // Replicas larger than one chunk are fetched in chunks of this size instead of in a single payload message
+    private static final int CHUNK_SIZE_BYTES = Integer.getInteger("dbs.restore.chunkSize", 1 << 20);
+    // Number of chunk requests kept in flight while restoring a replica
+    private static final int CHUNK_WINDOW = Integer.getInteger("dbs.restore.chunkWindow", 4);
+    private static final int MAX_POOLED_BUFFERS = 16;
+
     private final Node node;
 
+    // Direct buffers that replica chunks are read into while being served
+    private final BufferPool chunkBuffers;
+
     public RestoreManager(Node node) {
         this.node = node;
-
+        this.chunkBuffers = new BufferPool(CHUNK_SIZE_BYTES, MAX_POOLED_BUFFERS);
     }
 
 
@@ -40,6 +55,12 @@ public class RestoreManager {
         ConsoleLogger.log(INFO,"Starting restore");
         try {
             FileIdentifier fileId = FileIdentifier.fromPath(file);
+
+            ReedSolomon erasureCode = this.node.getBackupManager().getErasureCode(fileId);
+            if (erasureCode != null) {
+                return this.restoreErasureCoded(fileId, erasureCode);
+            }
+
             if (this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId) == null) {
                 ConsoleLogger.log(SEVERE, "File is not backed up");
                 return "File is not backed up";
@@ -51,6 +72,7 @@ public class RestoreManager {
             } else {
                 ReplicaIdentifier[] replicaIds;
                 replicaIds = FileManager.generateReplicaIds(fileId, this.node.getBackupManager().getDesiredFileRepDegreeOfFile(fileId));
+                this.node.prefetchSuccessors(replicaIds);
                 for (ReplicaIdentifier r: replicaIds) {
                     try {
                         NodeInfo res = this.node.requestRestore(r).get();
@@ -67,22 +89,104 @@ public class RestoreManager {
         return "Failed to restore file.";
     }
 
+    /**
+     * Asks for every fragment of the file at once and rebuilds it as soon as enough of them arrived
+     *
+     * @param fileId      - file to restore
+     * @param erasureCode - code the file was backed up with
+     * @return message describing the outcome
+     */
+    private String restoreErasureCoded(FileIdentifier fileId, ReedSolomon erasureCode) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        int fragmentSize = erasureCode.fragmentSize(fileId.getFileSize());
+        ReplicaIdentifier[] fragmentIds = FileManager.generateFragmentIds(fileId, erasureCode.getTotalFragments(), fragmentSize);
+        this.node.prefetchSuccessors(fragmentIds);
+
+        byte[][] fragments = new byte[fragmentIds.length][];
+        CompletableFuture<Void> enoughFragments = new CompletableFuture<>();
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger missing = new AtomicInteger();
+
+        for (int i = 0; i < fragmentIds.length; i++) {
+            final int index = i;
+
+            this.fetchReplicaData(fragmentIds[i]).whenComplete((data, e) -> {
+                if (e == null && data.length == fragmentSize) {
+                    synchronized (fragments) {
+                        fragments[index] = data;
+                    }
+                    if (received.incrementAndGet() == erasureCode.getDataFragments()) {
+                        enoughFragments.complete(null);
+                    }
+                } else if (missing.incrementAndGet() > erasureCode.getParityFragments()) {
+                    enoughFragments.completeExceptionally(new Exception("Too many fragments are unavailable"));
+                }
+            });
+        }
+
+        try {
+            enoughFragments.get();
+        } catch (ExecutionException e) {
+            ConsoleLogger.log(SEVERE, e.getMessage());
+            return "Failed to restore file.";
+        }
+
+        byte[] content;
+        synchronized (fragments) {
+            content = erasureCode.decode(fragments, (int) fileId.getFileSize());
+        }
+
+        Path directory = FileManager.getOrCreateDirectory("restored", NODE_PATH);
+        FileManager.writeToFile(directory.resolve(fileId.getFileName()).toString(), content);
+
+        return "Restored file " + fileId.getFileName() + " from " + erasureCode.getDataFragments() + " of " + fragmentIds.length + " fragments";
+    }
+
+    /**
+     * Fetches the content of a replica in a single payload without blocking
+     *
+     * @param replicaId - replica to fetch
+     * @return future resolved with the replica's content
+     */
+    private CompletableFuture<byte[]> fetchReplicaData(ReplicaIdentifier replicaId) {
+        SimpleNodeInfo thisNode;
+        try {
+            thisNode = new SimpleNodeInfo(this.node.getNodeInfo());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return this.node.findSuccessorCachedAsync(replicaId.getHash())
+                .thenCompose(targetNode -> {
+                    try {
+                        return this.node.getCommunicator().request(targetNode, new RestoreRequestMessage(thisNode, thisNode, replicaId));
+                    } catch (IOException | NoSuchAlgorithmException e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .thenApply(response -> {
+                    if (!(response instanceof RestorePayloadMessage)) {
+                        this.node.getLookupCache().invalidate(replicaId.getKey());
+                        throw new CompletionException(new Exception("Could not find replica " + replicaId.getHash()));
+                    }
+                    return ((RestorePayloadMessage) response).getData();
+                });
+    }
+
     public CompletableFuture<NodeInfo> requestRestore(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
 
-        CompletableFuture<NodeInfo> ret = new CompletableFuture<>();
+        if (replicaId.getFileId().getFileSize() > CHUNK_SIZE_BYTES) {
+            return this.requestChunkedRestore(replicaId);
+        }
 
-        SSLServerSocket tempSocket = Network.createServerSocket(0);
-        tempSocket.setSoTimeout(REQUEST_TIMEOUT_MS);
+        CompletableFuture<NodeInfo> ret = new CompletableFuture<>();
 
-        SimpleNodeInfo thisNode = new SimpleNodeInfo(this.node.getNodeInfo().address, tempSocket.getLocalPort());
+        SimpleNodeInfo thisNode = new SimpleNodeInfo(this.node.getNodeInfo());
 
         RestoreRequestMessage msg = new RestoreRequestMessage(thisNode, thisNode, replicaId);
 
-        NodeInfo targetNode = this.node.findSuccessor(replicaId.getHash());
-
-        CompletableFuture<ChordMessage> request = this.node.getCommunicator().async_listenOnSocket(tempSocket);
+        NodeInfo targetNode = this.node.findSuccessorCached(replicaId.getHash());
 
-        this.node.getCommunicator().send(Utils.createClientSocket(targetNode.address, targetNode.port), msg);
+        CompletableFuture<ChordMessage> request = this.node.getCommunicator().request(targetNode, msg);
 
         ConsoleLogger.log(SEVERE, "I want to restore file with key " + replicaId);
         ConsoleLogger.log(SEVERE, "Sent restore request for node at " + targetNode.address + ":" + targetNode.port);
@@ -90,6 +194,7 @@ public class RestoreManager {
         ChordMessage restoreRequestResponse = request.get();
 
         if(restoreRequestResponse instanceof NotFoundMessage){
+            this.node.getLookupCache().invalidate(replicaId.getKey());
             ret.completeExceptionally(new Exception("Could not find file to restore!"));
             return ret;
         }
@@ -104,6 +209,77 @@ public class RestoreManager {
         return ret;
     }
 
+    /**
+     * Fetches the replica in chunks of CHUNK_SIZE_BYTES, keeping CHUNK_WINDOW requests in flight, and writes each one at
+     * its offset in the restored file. The first chunk is routed through the ring and its answer tells which node
+     * holds the replica, so the remaining ones are asked to that node directly.
+     *
+     * @param replicaId - replica to restore
+     * @return future resolved with the node the replica was restored from
+     */
+    private CompletableFuture<NodeInfo> requestChunkedRestore(ReplicaIdentifier replicaId) throws IOException, NoSuchAlgorithmException, ExecutionException, InterruptedException {
+        CompletableFuture<NodeInfo> ret = new CompletableFuture<>();
+
+        SimpleNodeInfo thisNode = new SimpleNodeInfo(this.node.getNodeInfo());
+        long size = replicaId.getFileId().getFileSize();
+
+        NodeInfo targetNode = this.node.findSuccessorCached(replicaId.getHash());
+
+        ConsoleLogger.log(SEVERE, "I want to restore file with key " + replicaId + " in chunks");
+
+        ChordMessage firstChunk = this.node.getCommunicator().request(targetNode,
+                new RestoreChunkRequestMessage(thisNode, thisNode, replicaId, 0, (int) Math.min(CHUNK_SIZE_BYTES, size))).get();
+
+        if (!(firstChunk instanceof RestoreChunkMessage)) {
+            this.node.getLookupCache().invalidate(replicaId.getKey());
+            ret.completeExceptionally(new Exception("Could not find file to restore!"));
+            return ret;
+        }
+
+        SimpleNodeInfo holder = ((RestoreChunkMessage) firstChunk).getOriginNode();
+        Path destination = FileManager.getOrCreateDirectory("restored", NODE_PATH).resolve(replicaId.getFileId().getFileName());
+
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(destination, WRITE, CREATE, TRUNCATE_EXISTING)) {
+            writeChunk(channel, firstChunk);
+
+            ArrayDeque<CompletableFuture<ChordMessage>> inFlight = new ArrayDeque<>();
+
+            for (long offset = CHUNK_SIZE_BYTES; offset < size; offset += CHUNK_SIZE_BYTES) {
+                int length = (int) Math.min(CHUNK_SIZE_BYTES, size - offset);
+                inFlight.add(this.node.getCommunicator().request(holder, new RestoreChunkRequestMessage(thisNode, thisNode, replicaId, offset, length)));
+
+                if (inFlight.size() >= CHUNK_WINDOW) {
+                    writeChunk(channel, inFlight.poll().get());
+                }
+            }
+
+            while (!inFlight.isEmpty()) {
+                writeChunk(channel, inFlight.poll().get());
+            }
+        } catch (IOException | ExecutionException e) {
+            Files.deleteIfExists(destination);
+            ret.completeExceptionally(e);
+            return ret;
+        }
+
+        ret.complete(new NodeInfo(holder));
+
+        return ret;
+    }
+
+    private static void writeChunk(AsynchronousFileChannel channel, ChordMessage response) throws IOException, ExecutionException, InterruptedException {
+        if (!(response instanceof RestoreChunkMessage)) {
+            throw new IOException("Replica became unavailable during restore");
+        }
+
+        RestoreChunkMessage chunk = (RestoreChunkMessage) response;
+        ByteBuffer buffer = ByteBuffer.wrap(chunk.getData());
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, chunk.getOffset() + buffer.position()).get();
+        }
+    }
+
     private void storeRestorePayload(RestorePayloadMessage message) throws IOException, ExecutionException, InterruptedException {
 
         Path directory = FileManager.getOrCreateDirectory("restored", NODE_PATH);
@@ -121,10 +297,8 @@ public class RestoreManager {
         final ReplicaIdentifier replicaId = message.getReplicaId();
         if (this.node.getState().hasReplica(replicaId)) {
             ConsoleLogger.log(SEVERE, "I have the file");
-            String fileName = String.valueOf(replicaId.getFileId().hashCode());
-            Path directory = FileManager.getOrCreateDirectory("backup", NODE_PATH);
-            byte[] data = FileManager.readFromFile(directory.resolve(fileName).toString());
-            this.node.getCommunicator().send(createClientSocket(message.getRequestSocketInfo().address, message.getRequestSocketInfo().port),
+            byte[] data = this.node.getReplicaStore().read(replicaId.getFileId());
+            this.node.getCommunicator().reply(message.getRequestSocketInfo(), message,
                     new RestorePayloadMessage(new SimpleNodeInfo(this.node.getNodeInfo()), replicaId, data));
             ConsoleLogger.log(SEVERE, "Sent it over");
         } else {
@@ -132,16 +306,58 @@ public class RestoreManager {
             SimpleNodeInfo replicaLocation = this.node.getState().getReplicaLocation(replicaId);
             if (replicaLocation != null) {
                 RestoreRequestMessage msg = new RestoreRequestMessage(message.getRequestSocketInfo(), new SimpleNodeInfo(this.node.getNodeInfo()), message.getReplicaId());
-                this.node.getCommunicator().send(Utils.createClientSocket(replicaLocation.address, replicaLocation.port), msg);
+                msg.setRequestId(message.getRequestId());
+                this.node.getCommunicator().send(replicaLocation, msg);
+            }
+        }
+    }
+
+    /**
+     * Serves a region of a local replica. The region is read straight from the file into a pooled direct buffer, which
+     * the transport writes as the reply's body and then returns to the pool. Regions longer than CHUNK_SIZE_BYTES are
+     * refused, so a request cannot make this node allocate more than one chunk.
+     *
+     * @param message - request for the region
+     */
+    public void handleRestoreChunkRequest(RestoreChunkRequestMessage message) throws IOException, NoSuchAlgorithmException {
+        final ReplicaIdentifier replicaId = message.getReplicaId();
+
+        if (message.getOffset() < 0 || message.getLength() <= 0 || message.getLength() > CHUNK_SIZE_BYTES) {
+            ConsoleLogger.log(WARNING, "Refused to serve " + message.getLength() + " bytes at offset " + message.getOffset()
+                    + " of replica " + replicaId.getHash());
+            this.node.getCommunicator().reply(message.getRequestSocketInfo(), message, new NotFoundMessage());
+            return;
+        }
+
+        if (this.node.getState().hasReplica(replicaId)) {
+            ByteBuffer buffer = this.chunkBuffers.acquire(message.getLength());
+
+            try (ReplicaContent content = this.node.getReplicaStore().open(replicaId.getFileId())) {
+                while (buffer.hasRemaining() && content.read(buffer, message.getOffset() + buffer.position()) >= 0);
+            } catch (IOException e) {
+                this.chunkBuffers.release(buffer);
+                throw e;
+            }
+            buffer.flip();
+
+            this.node.getCommunicator().reply(message.getRequestSocketInfo(), message,
+                    new RestoreChunkMessage(new SimpleNodeInfo(this.node.getNodeInfo()), replicaId, message.getOffset(), buffer, this.chunkBuffers));
+        } else {
+            SimpleNodeInfo replicaLocation = this.node.getState().getReplicaLocation(replicaId);
+            if (replicaLocation != null) {
+                RestoreChunkRequestMessage msg = new RestoreChunkRequestMessage(message.getRequestSocketInfo(), new SimpleNodeInfo(this.node.getNodeInfo()),
+                        replicaId, message.getOffset(), message.getLength());
+                msg.setRequestId(message.getRequestId());
+                this.node.getCommunicator().send(replicaLocation, msg);
+            } else {
+                this.node.getCommunicator().reply(message.getRequestSocketInfo(), message, new NotFoundMessage());
             }
         }
     }
 
     public void restoreFromOwnStorage(FileIdentifier fileId) throws IOException, ExecutionException, InterruptedException {
-        Path directory = FileManager.getOrCreateDirectory("backup", NODE_PATH);
-        String fileName = String.valueOf(fileId.hashCode());
-        byte[] data = FileManager.readFromFile(directory.resolve(fileName).toString());
-        directory = FileManager.getOrCreateDirectory("restored", NODE_PATH);
+        byte[] data = this.node.getReplicaStore().read(fileId);
+        Path directory = FileManager.getOrCreateDirectory("restored", NODE_PATH);
         FileManager.writeToFile(directory.resolve(fileId.getFileName()).toString(), data);
     }
 
@@ -0,0 +1,94 @@
+package com.dbs.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Limits how many asynchronous operations run at once without blocking any thread.
+ * Operations over the limit wait in a queue and are started as running ones complete.
+ */
+public class AsyncLimiter {
+
+    private final int maxInFlight;
+    private final AtomicInteger inFlight;
+    private final ConcurrentLinkedQueue<Runnable> waiting;
+    // Calls to startWaiting not yet handled. Only the call that finds none pending starts operations
+    private final AtomicInteger startRequests;
+
+    public AsyncLimiter(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new AtomicInteger();
+        this.waiting = new ConcurrentLinkedQueue<>();
+        this.startRequests = new AtomicInteger();
+    }
+
+    /**
+     * @param operation - starts the operation and returns its future
+     * @return future completed like the operation's, once it has had its turn to run
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> operation) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        this.waiting.add(() -> {
+            CompletableFuture<T> started;
+            try {
+                started = operation.get();
+            } catch (RuntimeException e) {
+                started = CompletableFuture.failedFuture(e);
+            }
+
+            started.whenComplete((value, e) -> {
+                this.inFlight.decrementAndGet();
+                this.startWaiting();
+
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+
+        this.startWaiting();
+
+        return result;
+    }
+
+    public int inFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Operations that complete as they start call this again from inside it. Those calls only ask the running one to
+     * go around once more, so the stack does not grow with the length of the queue
+     */
+    private void startWaiting() {
+        if (this.startRequests.getAndIncrement() != 0) return;
+
+        int handled = 1;
+        do {
+            this.startAvailable();
+            handled = this.startRequests.addAndGet(-handled);
+        } while (handled != 0);
+    }
+
+    private void startAvailable() {
+        while (true) {
+            int current = this.inFlight.get();
+            if (current >= this.maxInFlight) return;
+            if (!this.inFlight.compareAndSet(current, current + 1)) continue;
+
+            Runnable next = this.waiting.poll();
+            if (next == null) {
+                this.inFlight.decrementAndGet();
+                // Something may have been queued after the poll, while the slot was still taken
+                if (this.waiting.isEmpty()) return;
+                continue;
+            }
+
+            next.run();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.dbs.utils;
+
+import com.dbs.network.messages.ChordMessage.MESSAGE_TYPE;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static com.dbs.network.messages.ChordMessage.MESSAGE_TYPE.*;
+
+/**
+ * Counters kept by a node about its own activity, shown by the METRICS command
+ */
+public class Metrics {
+
+    // Messages used to keep the ring and route lookups, as opposed to the ones moving replicas
+    private static final EnumSet<MESSAGE_TYPE> CONTROL_PLANE = EnumSet.of(
+            FETCH_PREDECESSOR, FIND_SUCCESSOR, SUCCESSOR, PREDECESSOR, NOTIFY_SUCCESSOR,
+            STATUS_CHECK, STATUS_CHECK_CONFIRM, LOOKUP_STEP, LOOKUP_STEP_REPLY, HEARTBEAT,
+            LOOKUP_BATCH, LOOKUP_BATCH_REPLY, FIND_SUCCESSORS, SUCCESSORS, FETCH_FINGER_TABLE, FINGER_TABLE, LEAVE);
+
+    private final LongAdder[] sent = newCounters();
+    private final LongAdder[] received = newCounters();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupHops = new LongAdder();
+
+    private final Map<String, Supplier<Object>> gauges = new ConcurrentSkipListMap<>();
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[MESSAGE_TYPE.values().length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    public void messageSent(MESSAGE_TYPE type) {
+        this.sent[type.ordinal()].increment();
+    }
+
+    public void messageReceived(MESSAGE_TYPE type) {
+        this.received[type.ordinal()].increment();
+    }
+
+    /**
+     * @param hops - nodes asked by an iterative lookup until one knew the answer
+     */
+    public void lookup(int hops) {
+        this.lookups.increment();
+        this.lookupHops.add(hops);
+    }
+
+    /**
+     * Registers a value that is read every time the metrics are shown
+     */
+    public void gauge(String name, Supplier<Object> value) {
+        this.gauges.put(name, value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder metrics = new StringBuilder("[METRICS]\n");
+
+        if (!this.gauges.isEmpty()) {
+            metrics.append("\n");
+            this.gauges.forEach((name, value) -> metrics.append(name).append(": ").append(value.get()).append("\n"));
+        }
+
+        long controlSent = 0, controlReceived = 0;
+        StringBuilder perType = new StringBuilder();
+
+        for (MESSAGE_TYPE type : MESSAGE_TYPE.values()) {
+            long sent = this.sent[type.ordinal()].sum();
+            long received = this.received[type.ordinal()].sum();
+
+            if (CONTROL_PLANE.contains(type)) {
+                controlSent += sent;
+                controlReceived += received;
+            }
+            if (sent > 0 || received > 0) {
+                perType.append(type).append(": ").append(sent).append(" sent, ").append(received).append(" received\n");
+            }
+        }
+
+        metrics.append("\nControl plane messages: ").append(controlSent).append(" sent, ").append(controlReceived).append(" received\n");
+        metrics.append("\nMessages by type:\n").append(perType.length() > 0 ? perType : "None.\n");
+
+        long lookups = this.lookups.sum();
+        if (lookups > 0) {
+            metrics.append(String.format("\nIterative lookups: %d (average hops: %.2f)\n", lookups, (double) this.lookupHops.sum() / lookups));
+        }
+
+        return metrics.toString();
+    }
+}
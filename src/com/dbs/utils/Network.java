@@ -1,6 +1,7 @@
 package com.dbs.utils;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
@@ -85,4 +86,28 @@ public class Network {
         socket.setSSLParameters(parameters);
         return socket;
     }
+
+    /**
+     * Creates an SSLEngine with the same cipher suites and client authentication as createServerSocket,
+     * for transports that drive TLS over non-blocking channels
+     *
+     * @param clientMode - true for connections this node opens, false for accepted ones
+     * @param host       - peer host, used for session resumption on client connections
+     * @param port       - peer port
+     */
+    public static SSLEngine createSSLEngine(boolean clientMode, String host, int port) throws NoSuchAlgorithmException {
+        if (enabledSuites == null) {
+            Network.filterCipherSuites();
+        }
+        SSLEngine engine = clientMode ? SSLContext.getDefault().createSSLEngine(host, port) : SSLContext.getDefault().createSSLEngine();
+        engine.setUseClientMode(clientMode);
+        engine.setEnabledCipherSuites(enabledSuites);
+        if (!clientMode) {
+            engine.setNeedClientAuth(true);
+            SSLParameters parameters = engine.getSSLParameters();
+            parameters.setUseCipherSuitesOrder(true);
+            engine.setSSLParameters(parameters);
+        }
+        return engine;
+    }
 }
@@ -0,0 +1,143 @@
+package com.dbs.utils;
+
+import com.dbs.chord.SimpleNodeInfo;
+import com.dbs.protocols.backup.ReplicaIdentifier;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Replica locations ordered by the position of the replica's key on the ring, so that the replicas of a key range are
+ * found by walking only that range instead of every location known. Keys are stored with their sign bit flipped, which
+ * makes the signed order of the map the unsigned order of the ring. Replicas whose keys collide share one small
+ * immutable map, replaced as a whole on every change.
+ */
+public class ReplicaLocationIndex implements Serializable {
+
+    private final ConcurrentSkipListMap<Long, Map<ReplicaIdentifier, SimpleNodeInfo>> locations = new ConcurrentSkipListMap<>();
+
+    private static long position(long key) {
+        return key ^ Long.MIN_VALUE;
+    }
+
+    public void put(ReplicaIdentifier replicaId, SimpleNodeInfo location) {
+        this.locations.compute(position(replicaId.getKey()), (position, replicas) -> {
+            if (replicas == null) {
+                return Map.of(replicaId, location);
+            }
+
+            HashMap<ReplicaIdentifier, SimpleNodeInfo> updated = new HashMap<>(replicas);
+            updated.put(replicaId, location);
+            return Map.copyOf(updated);
+        });
+    }
+
+    public SimpleNodeInfo get(ReplicaIdentifier replicaId) {
+        Map<ReplicaIdentifier, SimpleNodeInfo> replicas = this.locations.get(position(replicaId.getKey()));
+        return replicas == null ? null : replicas.get(replicaId);
+    }
+
+    public boolean containsKey(ReplicaIdentifier replicaId) {
+        return this.get(replicaId) != null;
+    }
+
+    public void remove(ReplicaIdentifier replicaId) {
+        this.locations.computeIfPresent(position(replicaId.getKey()), (position, replicas) -> without(replicas, replicaId));
+    }
+
+    /**
+     * Removes the location of the replica only if it still is location
+     */
+    public void remove(ReplicaIdentifier replicaId, SimpleNodeInfo location) {
+        this.locations.computeIfPresent(position(replicaId.getKey()), (position, replicas) ->
+                location.equals(replicas.get(replicaId)) ? without(replicas, replicaId) : replicas);
+    }
+
+    private static Map<ReplicaIdentifier, SimpleNodeInfo> without(Map<ReplicaIdentifier, SimpleNodeInfo> replicas, ReplicaIdentifier replicaId) {
+        if (!replicas.containsKey(replicaId)) return replicas;
+        if (replicas.size() == 1) return null;
+
+        HashMap<ReplicaIdentifier, SimpleNodeInfo> updated = new HashMap<>(replicas);
+        updated.remove(replicaId);
+        return Map.copyOf(updated);
+    }
+
+    public boolean isEmpty() {
+        return this.locations.isEmpty();
+    }
+
+    /**
+     * Goes through every location in ring order. Locations added or removed meanwhile may or may not be seen
+     */
+    public void forEach(BiConsumer<ReplicaIdentifier, SimpleNodeInfo> action) {
+        for (Map<ReplicaIdentifier, SimpleNodeInfo> replicas : this.locations.values()) {
+            replicas.forEach(action);
+        }
+    }
+
+    /**
+     * Goes through the locations of the replicas whose key is strictly inside the ring interval (left, right), in ring
+     * order from left. Like Utils.between, the interval is empty when left and right are the same key
+     */
+    public void forEachBetween(long left, long right, BiConsumer<ReplicaIdentifier, SimpleNodeInfo> action) {
+        for (NavigableMap<Long, Map<ReplicaIdentifier, SimpleNodeInfo>> part : this.partsBetween(left, right)) {
+            for (Map<ReplicaIdentifier, SimpleNodeInfo> replicas : part.values()) {
+                replicas.forEach(action);
+            }
+        }
+    }
+
+    /**
+     * @return the locations of the replicas whose key is strictly inside the ring interval (left, right), in ring order
+     */
+    public List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> between(long left, long right) {
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> entries = new ArrayList<>();
+        this.forEachBetween(left, right, (replicaId, location) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(replicaId, location)));
+        return entries;
+    }
+
+    /**
+     * @return number of replicas whose key is strictly inside the ring interval (left, right)
+     */
+    public int countBetween(long left, long right) {
+        int count = 0;
+        for (NavigableMap<Long, Map<ReplicaIdentifier, SimpleNodeInfo>> part : this.partsBetween(left, right)) {
+            for (Map<ReplicaIdentifier, SimpleNodeInfo> replicas : part.values()) {
+                count += replicas.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return every location, in ring order, at the time of the call
+     */
+    public List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> entries() {
+        List<Map.Entry<ReplicaIdentifier, SimpleNodeInfo>> entries = new ArrayList<>();
+        this.forEach((replicaId, location) -> entries.add(new AbstractMap.SimpleImmutableEntry<>(replicaId, location)));
+        return entries;
+    }
+
+    /**
+     * @return views of the map covering the ring interval (left, right), two of them when it wraps around
+     */
+    private List<NavigableMap<Long, Map<ReplicaIdentifier, SimpleNodeInfo>>> partsBetween(long left, long right) {
+        long from = position(left);
+        long to = position(right);
+
+        if (from < to) {
+            return List.of(this.locations.subMap(from, false, to, false));
+        }
+        if (from == to) {
+            return List.of();
+        }
+        return List.of(this.locations.tailMap(from, false), this.locations.headMap(to, false));
+    }
+}
@@ -1,5 +1,7 @@
 package com.dbs.utils;
 
+import com.dbs.filemanager.ReedSolomon;
+import com.dbs.network.codec.Wire;
 import com.dbs.protocols.backup.FileIdentifier;
 import com.dbs.protocols.backup.NoSpaceException;
 import com.dbs.protocols.backup.ReplicaIdentifier;
@@ -7,33 +9,125 @@ import com.dbs.chord.Node;
 import com.dbs.chord.NodeInfo;
 import com.dbs.chord.SimpleNodeInfo;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Metadata a node keeps about replicas: the ones it stores, where the ones of its keys are, and how the files backed up
+ * from it were backed up. When opened on a directory, every change is appended to a write-ahead log there, and the
+ * whole state is written to a snapshot from time to time so that older log segments can be dropped. On start, the
+ * last snapshot and the log after it are read back, split by partition and applied in parallel.
+ */
 public class  State implements Serializable {
 
-    private int maxSpace;
+    // Records appended since the last snapshot after which a new one is written
+    private static final int SNAPSHOT_AFTER_RECORDS = Integer.getInteger("dbs.state.snapshotAfterRecords", 100000);
+    private static final int SNAPSHOT_CHECK_INTERVAL_MS = Integer.getInteger("dbs.state.snapshotCheckIntervalMs", 10000);
+    // Records no caller waits for, like locations sent by other nodes, reach the disk at least this often
+    private static final int GROUP_COMMIT_INTERVAL_MS = Integer.getInteger("dbs.state.groupCommitIntervalMs", 20);
+    // Records are spread over this many partitions, by file or key, and replayed one thread per partition on start.
+    // Records of the same partition are always applied in log order
+    private static final int PARTITIONS = 16;
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String PARTIAL_SUFFIX = ".tmp";
+
+    private static final byte ADD_REPLICA = 0;
+    private static final byte DELETE_REPLICA = 1;
+    private static final byte DELETE_FILE = 2;
+    private static final byte SET_LOCATION = 3;
+    private static final byte REMOVE_LOCATION = 4;
+    private static final byte SET_MAX_SPACE = 5;
+    private static final byte SET_REP_DEGREE = 6;
+    private static final byte SET_ERASURE_CODE = 7;
+    private static final byte FORGET_BACKED_UP_FILE = 8;
+
+    private volatile int maxSpace;
 
     private ConcurrentHashMap<FileIdentifier, HashSet<ReplicaIdentifier>> localReplicas;
-    private ConcurrentHashMap<ReplicaIdentifier, SimpleNodeInfo> replicasLocation;
+    // Kept by the node responsible for each replica's key, ordered by key so a range is found without a full scan
+    private ReplicaLocationIndex replicasLocation;
+
+    // Files backed up from this node, with the number of replicas asked for or the code they were split with
+    private ConcurrentHashMap<FileIdentifier, Integer> desiredRepDegrees;
+    private ConcurrentHashMap<FileIdentifier, ReedSolomon> erasureCodes;
+
+    // Not set when the state is only kept in memory
+    private transient Path directory;
+    private transient WriteAheadLog log;
+    private transient AtomicLong recordsSinceSnapshot;
 
     public State() {
 
         this.maxSpace = Node.INITIAL_SPACE_LIMIT_BYTES;
         this.localReplicas = new ConcurrentHashMap<>();
-        this.replicasLocation = new ConcurrentHashMap<>();
+        this.replicasLocation = new ReplicaLocationIndex();
+        this.desiredRepDegrees = new ConcurrentHashMap<>();
+        this.erasureCodes = new ConcurrentHashMap<>();
     }
 
-    public void setMaxSpace(int maxSpace) {
+    /**
+     * Reads back the state kept in directory, if any, and logs every later change there
+     *
+     * @param directory - where the snapshots and log segments are kept
+     * @param scheduler - runs the periodic commits and snapshots
+     */
+    public static State open(Path directory, ScheduledExecutorService scheduler) throws IOException {
+        State state = new State();
+        state.directory = directory;
+
+        long start = System.nanoTime();
+        long records = state.recover();
+
+        state.log = new WriteAheadLog(directory);
+
+        ConsoleLogger.log(Level.INFO, "Recovered " + records + " state records in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+
+        scheduler.scheduleWithFixedDelay(state::commit, GROUP_COMMIT_INTERVAL_MS, GROUP_COMMIT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(state::snapshotIfDue, SNAPSHOT_CHECK_INTERVAL_MS, SNAPSHOT_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        return state;
+    }
+
+    public int getMaxSpace() {
+        return maxSpace;
+    }
+
+    public synchronized void setMaxSpace(int maxSpace) {
         this.maxSpace = maxSpace;
+        this.append(0, out -> {
+            out.writeByte(SET_MAX_SPACE);
+            out.writeInt(maxSpace);
+        });
     }
 
-    private int getSpace() {
-        int space = 0;
+    private long getSpace() {
+        long space = 0;
         for (FileIdentifier fileId : localReplicas.keySet()) {
             space += fileId.getFileSize();
         }
@@ -75,6 +169,7 @@ public class  State implements Serializable {
 
         if(hasFile(replicaId.getFileId())){
             localReplicas.get(replicaId.getFileId()).add(replicaId);
+            this.appendReplica(ADD_REPLICA, replicaId);
             return true;
         }
 
@@ -82,6 +177,7 @@ public class  State implements Serializable {
             HashSet<ReplicaIdentifier> newSet = new HashSet<>();
             newSet.add(replicaId);
             localReplicas.put(replicaId.getFileId(), newSet);
+            this.appendReplica(ADD_REPLICA, replicaId);
             return false;
         }
         throw new NoSpaceException();
@@ -89,6 +185,11 @@ public class  State implements Serializable {
 
     public synchronized void setReplicaLocation(ReplicaIdentifier replicaId, SimpleNodeInfo location) {
         replicasLocation.put(replicaId, location);
+        this.append(partition(replicaId.getKey()), out -> {
+            out.writeByte(SET_LOCATION);
+            Wire.writeReplicaId(out, replicaId);
+            Wire.writeNode(out, location);
+        });
     }
 
     public boolean hasFile(FileIdentifier id) {
@@ -101,24 +202,26 @@ public class  State implements Serializable {
 
 
     public SimpleNodeInfo getReplicaLocation(ReplicaIdentifier id) {
-        return this.replicasLocation.getOrDefault(id, null);
+        return this.replicasLocation.get(id);
     }
 
-    public boolean deleteReplica(ReplicaIdentifier id) {
+    public synchronized boolean deleteReplica(ReplicaIdentifier id) {
 
         if (hasReplica(id)) {
             localReplicas.get(id.getFileId()).remove(id);
             if(localReplicas.get(id.getFileId()).isEmpty()){
                 localReplicas.remove(id.getFileId());
             }
+            this.appendReplica(DELETE_REPLICA, id);
             return true;
         }
         return false;
     }
 
-    public void deleteFile(FileIdentifier id) {
+    public synchronized void deleteFile(FileIdentifier id) {
         if (hasFile(id)) {
             localReplicas.remove(id);
+            this.appendFile(DELETE_FILE, id);
         }
     }
 
@@ -147,8 +250,8 @@ public class  State implements Serializable {
 
         replicasLocation.forEach((key, value) -> {
             try {
-                result.append("Replica number " + key.getHash() + " of file " + key.getFileId().getFileName() + " is in node " + new NodeInfo(value.address, value.port).id + "\n");
-            } catch (NoSuchAlgorithmException e) {}
+                result.append("Replica number " + key.getHash() + " of file " + key.getFileId().getFileName() + " is in node " + new NodeInfo(value).id + "\n");
+            } catch (IOException | NoSuchAlgorithmException e) {}
         });
 
         return result.toString();
@@ -168,11 +271,11 @@ public class  State implements Serializable {
     }
 
 
-    public ConcurrentHashMap<ReplicaIdentifier, SimpleNodeInfo> getReplicasLocation() {
+    public ReplicaLocationIndex getReplicasLocation() {
         return replicasLocation;
     }
 
-    public ArrayList<ReplicaIdentifier> freeSpace(int newSizeBytes) {
+    public synchronized ArrayList<ReplicaIdentifier> freeSpace(int newSizeBytes) {
 
         int minimumSpaceToFree = this.maxSpace - newSizeBytes;
 
@@ -205,11 +308,434 @@ public class  State implements Serializable {
         return this.replicasLocation.containsKey(replicaId);
     }
 
-    public void removeReplicaLocation(ReplicaIdentifier replicaId) {
+    public synchronized void removeReplicaLocation(ReplicaIdentifier replicaId) {
+        if (!this.replicasLocation.containsKey(replicaId)) return;
+
         this.replicasLocation.remove(replicaId);
+        this.append(partition(replicaId.getKey()), out -> {
+            out.writeByte(REMOVE_LOCATION);
+            Wire.writeReplicaId(out, replicaId);
+        });
+    }
+
+    /**
+     * Removes the location of the replica only if it was not changed since it was read as location
+     */
+    public synchronized void removeReplicaLocation(ReplicaIdentifier replicaId, SimpleNodeInfo location) {
+        if (location.equals(this.replicasLocation.get(replicaId))) {
+            this.removeReplicaLocation(replicaId);
+        }
+    }
+
+    /**
+     * @return every replica stored by this node, at the time of the call
+     */
+    public synchronized ArrayList<ReplicaIdentifier> getLocalReplicas() {
+        ArrayList<ReplicaIdentifier> replicas = new ArrayList<>();
+        for (HashSet<ReplicaIdentifier> fileReplicas : this.localReplicas.values()) {
+            replicas.addAll(fileReplicas);
+        }
+        return replicas;
     }
 
     public boolean hasFileReplicas(FileIdentifier id) {
         return this.localReplicas.containsKey(id);
     }
+
+    /**
+     * @return number of replicas asked for when the file was backed up from this node, null if it was not
+     */
+    public Integer getDesiredRepDegree(FileIdentifier fileId) {
+        return this.desiredRepDegrees.get(fileId);
+    }
+
+    public synchronized void setDesiredRepDegree(FileIdentifier fileId, int repDegree) {
+        this.desiredRepDegrees.put(fileId, repDegree);
+        this.append(partition(fileId), out -> {
+            out.writeByte(SET_REP_DEGREE);
+            Wire.writeFileId(out, fileId);
+            out.writeInt(repDegree);
+        });
+    }
+
+    /**
+     * @return the code the file was backed up with from this node, or null if it was not backed up as fragments
+     */
+    public ReedSolomon getErasureCode(FileIdentifier fileId) {
+        return this.erasureCodes.get(fileId);
+    }
+
+    public synchronized void setErasureCode(FileIdentifier fileId, ReedSolomon erasureCode) {
+        this.erasureCodes.put(fileId, erasureCode);
+        this.append(partition(fileId), out -> {
+            out.writeByte(SET_ERASURE_CODE);
+            Wire.writeFileId(out, fileId);
+            out.writeInt(erasureCode.getDataFragments());
+            out.writeInt(erasureCode.getParityFragments());
+        });
+    }
+
+    /**
+     * Forgets how the file was backed up from this node, once it is deleted
+     */
+    public synchronized void forgetBackedUpFile(FileIdentifier fileId) {
+        boolean forgotten = this.desiredRepDegrees.remove(fileId) != null;
+        forgotten |= this.erasureCodes.remove(fileId) != null;
+
+        if (forgotten) {
+            this.appendFile(FORGET_BACKED_UP_FILE, fileId);
+        }
+    }
+
+    /**
+     * Returns once every change made before the call is on disk. Called before telling another node that a change was
+     * made, as that node may act on it, like dropping its own copy of what was handed over
+     */
+    public void sync() throws IOException {
+        if (this.log != null) {
+            this.log.sync();
+        }
+    }
+
+    private void commit() {
+        try {
+            this.log.sync();
+        } catch (IOException e) {
+            ConsoleLogger.log(Level.SEVERE, "Could not write state log: " + e.getMessage());
+        }
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static int partition(long key) {
+        return Math.floorMod(Long.hashCode(key), PARTITIONS);
+    }
+
+    private static int partition(FileIdentifier fileId) {
+        return Math.floorMod(fileId.hashCode(), PARTITIONS);
+    }
+
+    private static byte[] record(RecordWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Logs a change already made in memory. Called with the state locked, so the log has changes in the order they
+     * were made
+     */
+    private void append(int partition, RecordWriter writer) {
+        if (this.log == null) return;
+
+        try {
+            this.log.append(partition, record(writer));
+            this.recordsSinceSnapshot.incrementAndGet();
+        } catch (IOException e) {
+            // records are written to memory here
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // records of stored replicas go by file, so that they stay ordered with the DELETE_FILE of their file
+    private void appendReplica(byte type, ReplicaIdentifier replicaId) {
+        this.append(partition(replicaId.getFileId()), out -> {
+            out.writeByte(type);
+            Wire.writeReplicaId(out, replicaId);
+        });
+    }
+
+    private void appendFile(byte type, FileIdentifier fileId) {
+        this.append(partition(fileId), out -> {
+            out.writeByte(type);
+            Wire.writeFileId(out, fileId);
+        });
+    }
+
+    /**
+     * Applies one record read back from a snapshot or the log. Records of different partitions are applied at the same
+     * time, and never touch the same file or key
+     */
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        byte type = in.readByte();
+        switch (type) {
+            case ADD_REPLICA: {
+                ReplicaIdentifier replicaId = Wire.readReplicaId(in);
+                this.localReplicas.computeIfAbsent(replicaId.getFileId(), fileId -> new HashSet<>()).add(replicaId);
+                break;
+            }
+            case DELETE_REPLICA: {
+                ReplicaIdentifier replicaId = Wire.readReplicaId(in);
+                this.localReplicas.computeIfPresent(replicaId.getFileId(), (fileId, replicas) -> {
+                    replicas.remove(replicaId);
+                    return replicas.isEmpty() ? null : replicas;
+                });
+                break;
+            }
+            case DELETE_FILE:
+                this.localReplicas.remove(Wire.readFileId(in));
+                break;
+            case SET_LOCATION:
+                this.replicasLocation.put(Wire.readReplicaId(in), Wire.readNode(in));
+                break;
+            case REMOVE_LOCATION:
+                this.replicasLocation.remove(Wire.readReplicaId(in));
+                break;
+            case SET_MAX_SPACE:
+                this.maxSpace = in.readInt();
+                break;
+            case SET_REP_DEGREE:
+                this.desiredRepDegrees.put(Wire.readFileId(in), in.readInt());
+                break;
+            case SET_ERASURE_CODE:
+                this.erasureCodes.put(Wire.readFileId(in), new ReedSolomon(in.readInt(), in.readInt()));
+                break;
+            case FORGET_BACKED_UP_FILE: {
+                FileIdentifier fileId = Wire.readFileId(in);
+                this.desiredRepDegrees.remove(fileId);
+                this.erasureCodes.remove(fileId);
+                break;
+            }
+            default:
+                throw new IOException("Unknown state record type " + type);
+        }
+    }
+
+    /**
+     * Loads the last complete snapshot, one thread per part, then replays the log segments written after it. Records
+     * are read in log order and handed to one single threaded lane per partition, in batches. Only the records replayed
+     * from the log count towards the next snapshot, as the ones loaded from the snapshot are already in it
+     *
+     * @return number of records applied
+     */
+    private long recover() throws IOException {
+        long snapshot = -1;
+        List<Path> snapshots = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(this.directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(SNAPSHOT_PREFIX)) continue;
+
+                if (name.endsWith(PARTIAL_SUFFIX)) {
+                    // a snapshot cut short by a crash, the log it would replace is still there
+                    deleteDirectory(file);
+                } else {
+                    snapshots.add(file);
+                    snapshot = Math.max(snapshot, snapshotNumber(file));
+                }
+            }
+        }
+
+        ExecutorService[] lanes = new ExecutorService[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor();
+        }
+
+        try {
+            List<Future<Long>> parts = new ArrayList<>();
+
+            if (snapshot >= 0) {
+                Path snapshotDirectory = this.directory.resolve(SNAPSHOT_PREFIX + snapshot);
+                for (int i = 0; i < PARTITIONS; i++) {
+                    Path part = snapshotDirectory.resolve("part-" + i);
+                    parts.add(lanes[i].submit(() -> WriteAheadLog.read(part, (partition, record) -> this.apply(record))));
+                }
+            }
+
+            long records = 0;
+            for (Future<Long> part : parts) {
+                records += part.get();
+            }
+
+            List<List<byte[]>> batches = newBatches();
+            List<Future<?>> applied = new ArrayList<>();
+
+            long logRecords = WriteAheadLog.readFrom(this.directory, Math.max(snapshot, 0), (partition, record) -> {
+                List<byte[]> batch = batches.get(partition);
+                batch.add(record);
+
+                if (batch.size() >= 1024) {
+                    applied.add(lanes[partition].submit(() -> this.applyAll(batch)));
+                    batches.set(partition, new ArrayList<>());
+                }
+            });
+
+            for (int i = 0; i < PARTITIONS; i++) {
+                List<byte[]> batch = batches.get(i);
+                applied.add(lanes[i].submit(() -> this.applyAll(batch)));
+            }
+            for (Future<?> batch : applied) {
+                batch.get();
+            }
+            this.recordsSinceSnapshot = new AtomicLong(logRecords);
+
+            // older snapshots are only left behind by a crash while deleting them
+            for (Path old : snapshots) {
+                if (snapshotNumber(old) < snapshot) deleteSnapshot(old);
+            }
+
+            return records + logRecords;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering state", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not recover state", e.getCause());
+        } finally {
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+        }
+    }
+
+    private static List<List<byte[]>> newBatches() {
+        List<List<byte[]>> batches = new ArrayList<>(PARTITIONS);
+        for (int i = 0; i < PARTITIONS; i++) {
+            batches.add(new ArrayList<>());
+        }
+        return batches;
+    }
+
+    private Void applyAll(List<byte[]> records) throws IOException {
+        for (byte[] record : records) {
+            this.apply(record);
+        }
+        return null;
+    }
+
+    private void snapshotIfDue() {
+        if (this.recordsSinceSnapshot.get() < SNAPSHOT_AFTER_RECORDS) return;
+
+        try {
+            this.snapshot();
+        } catch (IOException e) {
+            ConsoleLogger.log(Level.SEVERE, "Could not write state snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a new log segment, then writes the whole state, one part per partition, without stopping changes. A change
+     * made while the snapshot is written may or may not be in it, but it is in the new segment either way, and
+     * replaying a record over a state that already has it changes nothing. Once the snapshot is complete, the segments
+     * before it are deleted
+     */
+    private void snapshot() throws IOException {
+        long start = System.nanoTime();
+
+        long segment = this.log.rotate();
+        this.recordsSinceSnapshot.set(0);
+
+        Path partial = this.directory.resolve(SNAPSHOT_PREFIX + segment + PARTIAL_SUFFIX);
+        Files.createDirectories(partial);
+
+        FileOutputStream[] files = new FileOutputStream[PARTITIONS];
+        DataOutputStream[] parts = new DataOutputStream[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++) {
+            files[i] = new FileOutputStream(partial.resolve("part-" + i).toFile());
+            parts[i] = new DataOutputStream(new BufferedOutputStream(files[i], 1 << 16));
+        }
+
+        try {
+            // the sets of stored replicas are only safe to read with the state locked, and are small
+            HashMap<FileIdentifier, List<ReplicaIdentifier>> stored = new HashMap<>();
+            int maxSpace;
+            synchronized (this) {
+                this.localReplicas.forEach((fileId, replicas) -> stored.put(fileId, new ArrayList<>(replicas)));
+                maxSpace = this.maxSpace;
+            }
+
+            write(parts, 0, out -> {
+                out.writeByte(SET_MAX_SPACE);
+                out.writeInt(maxSpace);
+            });
+
+            for (Map.Entry<FileIdentifier, List<ReplicaIdentifier>> file : stored.entrySet()) {
+                for (ReplicaIdentifier replicaId : file.getValue()) {
+                    write(parts, partition(file.getKey()), out -> {
+                        out.writeByte(ADD_REPLICA);
+                        Wire.writeReplicaId(out, replicaId);
+                    });
+                }
+            }
+
+            for (Map.Entry<ReplicaIdentifier, SimpleNodeInfo> location : this.replicasLocation.entries()) {
+                write(parts, partition(location.getKey().getKey()), out -> {
+                    out.writeByte(SET_LOCATION);
+                    Wire.writeReplicaId(out, location.getKey());
+                    Wire.writeNode(out, location.getValue());
+                });
+            }
+
+            for (Map.Entry<FileIdentifier, Integer> file : this.desiredRepDegrees.entrySet()) {
+                write(parts, partition(file.getKey()), out -> {
+                    out.writeByte(SET_REP_DEGREE);
+                    Wire.writeFileId(out, file.getKey());
+                    out.writeInt(file.getValue());
+                });
+            }
+
+            for (Map.Entry<FileIdentifier, ReedSolomon> file : this.erasureCodes.entrySet()) {
+                write(parts, partition(file.getKey()), out -> {
+                    out.writeByte(SET_ERASURE_CODE);
+                    Wire.writeFileId(out, file.getKey());
+                    out.writeInt(file.getValue().getDataFragments());
+                    out.writeInt(file.getValue().getParityFragments());
+                });
+            }
+
+            for (int i = 0; i < PARTITIONS; i++) {
+                parts[i].flush();
+                files[i].getFD().sync();
+            }
+        } finally {
+            for (DataOutputStream part : parts) {
+                part.close();
+            }
+        }
+
+        Files.move(partial, this.directory.resolve(SNAPSHOT_PREFIX + segment), StandardCopyOption.ATOMIC_MOVE);
+
+        try (Stream<Path> entries = Files.list(this.directory)) {
+            for (Path old : (Iterable<Path>) entries::iterator) {
+                String name = old.getFileName().toString();
+                if (name.startsWith(SNAPSHOT_PREFIX) && !name.endsWith(PARTIAL_SUFFIX) && snapshotNumber(old) < segment) {
+                    deleteSnapshot(old);
+                }
+            }
+        }
+        this.log.deleteSegmentsBefore(segment);
+
+        ConsoleLogger.log(Level.INFO, "Wrote state snapshot " + segment + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    }
+
+    private static void write(DataOutputStream[] parts, int partition, RecordWriter writer) throws IOException {
+        WriteAheadLog.writeFrame(parts[partition], partition, record(writer));
+    }
+
+    private static long snapshotNumber(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length()));
+    }
+
+    /**
+     * Marks the snapshot as partial before emptying it, so one left half deleted by a crash is never loaded
+     */
+    private static void deleteSnapshot(Path snapshot) throws IOException {
+        Path partial = snapshot.resolveSibling(snapshot.getFileName() + PARTIAL_SUFFIX);
+        Files.move(snapshot, partial, StandardCopyOption.ATOMIC_MOVE);
+        deleteDirectory(partial);
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
 }
@@ -0,0 +1,259 @@
+package com.dbs.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append only log of records kept in numbered segment files. Appending only buffers the record in memory; sync writes
+ * everything buffered and forces it to disk. Only one sync runs at a time, and the callers that queue behind it find
+ * their records written by the next one, so concurrent writers share one fsync instead of paying one each.
+ * Each record is framed with its length, a partition number chosen by the writer, and a CRC32 of both and the record,
+ * so a record torn by a crash ends the reading of its segment instead of corrupting what follows. A new segment is
+ * started on every open and every rotate, so a torn end is never appended to.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // Longer lengths can only come from a torn frame
+    private static final int MAX_RECORD_BYTES = 1 << 24;
+
+    private final Path directory;
+
+    private FileChannel channel;
+    private long segment;
+
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    // Records appended and records known to be on disk, counted since the log was opened
+    private long appended = 0;
+    private volatile long durable = 0;
+
+    private final Object syncLock = new Object();
+
+    /**
+     * Opens the log for appending, in a segment after every existing one
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = directory;
+
+        List<Long> segments = segments(directory);
+        this.segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        this.channel = open(directory, this.segment);
+    }
+
+    private static FileChannel open(Path directory, long segment) throws IOException {
+        return FileChannel.open(segmentPath(directory, segment), CREATE, WRITE, APPEND);
+    }
+
+    private static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return numbers of the segments in directory, oldest first
+     */
+    public static List<Long> segments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * @return sequence number of the record, to be passed to sync to wait until it is on disk
+     */
+    public synchronized long append(int partition, byte[] record) {
+        try {
+            writeFrame(new DataOutputStream(this.pending), partition, record);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+
+        return ++this.appended;
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    /**
+     * Returns once every record appended before the call is on disk
+     */
+    public void sync() throws IOException {
+        this.sync(this.getAppended());
+    }
+
+    /**
+     * Returns once the record with sequence number upTo, and every one before it, is on disk
+     */
+    public void sync(long upTo) throws IOException {
+        if (this.durable >= upTo) return;
+
+        synchronized (this.syncLock) {
+            // the sync this caller waited for may have written its record already
+            if (this.durable >= upTo) return;
+
+            this.writePending();
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far. Appends only wait for the buffer to be taken, not for the disk.
+     * Called holding syncLock, which also guards channel and segment
+     */
+    private void writePending() throws IOException {
+        byte[] batch;
+        long last;
+        synchronized (this) {
+            batch = this.pending.toByteArray();
+            this.pending.reset();
+            last = this.appended;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer);
+        }
+        this.channel.force(false);
+
+        this.durable = last;
+    }
+
+    /**
+     * Syncs the current segment and starts a new one. Every record appended before the call is in an older segment
+     *
+     * @return number of the new segment
+     */
+    public long rotate() throws IOException {
+        synchronized (this.syncLock) {
+            this.writePending();
+
+            FileChannel next = open(this.directory, this.segment + 1);
+            FileChannel previous;
+            synchronized (this) {
+                // records appended while the old segment was forced are still pending, and go to the new one
+                previous = this.channel;
+                this.channel = next;
+                this.segment++;
+            }
+            previous.close();
+
+            return this.segment;
+        }
+    }
+
+    /**
+     * Deletes the segments older than segment, once what they hold is kept elsewhere
+     */
+    public void deleteSegmentsBefore(long segment) throws IOException {
+        for (long old : segments(this.directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(segmentPath(this.directory, old));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.syncLock) {
+            this.writePending();
+            this.channel.close();
+        }
+    }
+
+    public interface RecordConsumer {
+        void accept(int partition, byte[] record) throws IOException;
+    }
+
+    public static void writeFrame(DataOutputStream out, int partition, byte[] record) throws IOException {
+        out.writeInt(record.length);
+        out.writeInt(partition);
+        out.writeInt(checksum(record.length, partition, record));
+        out.write(record);
+    }
+
+    /**
+     * Covers the whole frame but the checksum itself, so a corrupt length or partition is caught like corrupt content
+     */
+    private static int checksum(int length, int partition, byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(2 * Integer.BYTES).putInt(length).putInt(partition).flip());
+        crc.update(record);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads the records of a log file in order, stopping at the first one that is incomplete or does not match its CRC
+     *
+     * @return number of records read
+     */
+    public static long read(Path file, RecordConsumer consumer) throws IOException {
+        long records = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                byte[] record;
+                int partition;
+                try {
+                    int length = in.readInt();
+                    partition = in.readInt();
+                    int expected = in.readInt();
+
+                    if (length < 0 || length > MAX_RECORD_BYTES) break;
+
+                    record = new byte[length];
+                    in.readFully(record);
+
+                    if (checksum(length, partition, record) != expected) break;
+                } catch (EOFException e) {
+                    break;
+                }
+
+                consumer.accept(partition, record);
+                records++;
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Reads every record of the segments from segment on, in order
+     *
+     * @return number of records read
+     */
+    public static long readFrom(Path directory, long segment, RecordConsumer consumer) throws IOException {
+        long records = 0;
+
+        for (long current : segments(directory)) {
+            if (current >= segment) {
+                records += read(segmentPath(directory, current), consumer);
+            }
+        }
+
+        return records;
+    }
+}